@@ -0,0 +1,63 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// @author Jared Scholz
+/* A shared pool of direct ByteBuffers in power-of-two sizes, so frames are not allocated (or copied) per image */
+public final class BufferPool { // singleton design pattern
+
+    private static final BufferPool instance = new BufferPool();
+
+    private static final int MIN_SHIFT = 12; // 4 KB
+    private static final int MAX_SHIFT = 26; // 64 MB - larger buffers are not kept
+    private static final int MAX_RETAINED_PER_SIZE = 8;
+
+    private final List<Queue<ByteBuffer>> free; // per size
+    private final AtomicIntegerArray retained; // buffers currently held in each queue
+
+    private BufferPool() {
+        free = new ArrayList<>();
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            free.add(new ConcurrentLinkedQueue<>());
+        }
+        retained = new AtomicIntegerArray(free.size());
+    }
+
+    public static BufferPool getInstance() {
+        return instance;
+    }
+
+    /* Returns a cleared buffer with at least the given capacity */
+    public ByteBuffer acquire(int capacity) {
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1));
+        if (shift > MAX_SHIFT) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        ByteBuffer buffer = free.get(shift - MIN_SHIFT).poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(1 << shift);
+        }
+        retained.decrementAndGet(shift - MIN_SHIFT);
+        buffer.clear();
+        return buffer;
+    }
+
+    /* Returns a buffer from acquire() to the pool - it must not be used afterwards */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int shift = 31 - Integer.numberOfLeadingZeros(capacity);
+        if (capacity != 1 << shift || shift < MIN_SHIFT || shift > MAX_SHIFT) {
+            return; // not one of ours, leave it to the garbage collector
+        }
+        if (retained.incrementAndGet(shift - MIN_SHIFT) <= MAX_RETAINED_PER_SIZE) {
+            free.get(shift - MIN_SHIFT).add(buffer);
+        } else {
+            retained.decrementAndGet(shift - MIN_SHIFT); // enough spares of this size already
+        }
+    }
+}
@@ -1,14 +1,13 @@
 package application;
 
+import tasks.FairScheduler;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.nio.ByteBuffer;
-import javax.imageio.ImageIO;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // @author Jared Scholz
 public class Client {
@@ -17,56 +16,78 @@ public class Client {
     public static final int HOST_PORT = 18181;
 
     private final ClientView view;
-    private Socket socket;
+    private final ImageCodec codec;
+    private final int quality;
+    private final AtomicInteger nextRequestId;
+    private final Map<Integer, Long> sentAt; // when each image still being processed was sent
+    private FrameChannel channel;
     private boolean stopRequested;
 
     public Client() {
+        this(ImageCodec.JPEG, ImageCodec.DEFAULT_QUALITY);
+    }
+
+    public Client(ImageCodec codec, int quality) {
         view = new ClientView(this);
-        socket = null;
+        this.codec = codec;
+        this.quality = quality;
+        nextRequestId = new AtomicInteger();
+        sentAt = new ConcurrentHashMap<>();
+        channel = null;
         stopRequested = false;
         view.display();
     }
 
     public void sendImage(BufferedImage image) { // used by the view thread
+        sendImage(image, FairScheduler.DEFAULT_PRIORITY);
+    }
+
+    /* Several images may be sent without waiting - each comes back with its request id */
+    public int sendImage(BufferedImage image, int priority) {
+        int requestId = nextRequestId.incrementAndGet();
         try {
-            // send image as a byte array along with the size:
-            OutputStream outputStream = socket.getOutputStream();
-            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-            ImageIO.write(image, "jpg", byteStream); // write image to the byte array
-            byte[] size = ByteBuffer.allocate(4).putInt(byteStream.size()).array(); // courtesy of StackOverflow (link below)
-            outputStream.write(size); // send the size of the byte array first
-            outputStream.write(byteStream.toByteArray()); // send the byte array
-            outputStream.flush();
+            sentAt.put(requestId, System.nanoTime());
+            channel.writeImage(requestId, priority, image); // encoded into a pooled buffer and sent with its header in one write
         } catch (IOException e) {
+            sentAt.remove(requestId);
             System.err.println("Client error: " + e);
         }
+        return requestId;
     }
 
     public void startClient() {
         try {
-            socket = new Socket(HOST_NAME, HOST_PORT);
+            channel = new FrameChannel(SocketChannel.open(new InetSocketAddress(HOST_NAME, HOST_PORT)));
+            channel.setEncoding(codec, quality);
+            channel.writeEncoding(codec, quality); // the server replies with the encoding it will use
         } catch (IOException e) {
             System.err.println("Client could not make connection: " + e);
             System.exit(-1);
         }
         try {
-            DataInputStream inputStream = new DataInputStream(socket.getInputStream());
             stopRequested = false;
-            while (!stopRequested && !socket.isClosed()) { // listen to server on main thread
-                // input stream blocks until data becomes available...
-                char identification = inputStream.readChar();
-                if (identification == 'p') { // progress detected:
-                    view.updateProgress(inputStream.readInt());
-                } else if (identification == 'i') { // image detected:
-                    /* Code from StackOverflow https://stackoverflow.com/a/25096332 below */
-                    byte[] sizeArray = new byte[4];
-                    inputStream.readFully(sizeArray);
-                    int size = ByteBuffer.wrap(sizeArray).asIntBuffer().get();
-                    byte[] imageArray = new byte[size];
-                    inputStream.readFully(imageArray);
-                    BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageArray));
-                    /* End code from StackOverflow */
-                    view.updateOutput(image);
+            while (!stopRequested && channel.isOpen()) { // listen to server on main thread
+                FrameChannel.Frame frame = channel.readFrame(); // blocks until data becomes available...
+                try {
+                    if (frame.getType() == FrameChannel.PROGRESS) { // progress detected:
+                        if (sentAt.containsKey(frame.getRequestId())) { // (not for an image already returned)
+                            view.updateProgress(frame.readProgress());
+                        }
+                    } else if (frame.getType() == FrameChannel.IMAGE) { // image detected:
+                        ImageCodec received = frame.getCodec();
+                        Long sent = sentAt.remove(frame.getRequestId());
+                        view.updateProgress(100); // the image is the last word on its request
+                        view.updateOutput(frame.readImage());
+                        if (sent != null) {
+                            System.out.println("Image " + frame.getRequestId() + " returned in "
+                                    + (System.nanoTime() - sent) / 1_000_000 + " ms using " + received);
+                        }
+                    } else if (frame.getType() == FrameChannel.ENCODING) { // encoding confirmed:
+                        channel.setEncoding(frame.getCodec(), frame.readQuality());
+                        System.out.println("Server is using " + channel.getCodec());
+                    }
+                } finally {
+                    frame.release();
                 }
             }
         } catch (IOException e) {
@@ -78,8 +99,11 @@ public class Client {
         stopRequested = true;
     }
 
+    /* Optional arguments: [RAW | RAW_DEFLATE | PNG | JPEG] [JPEG quality 1 - 100] */
     public static void main(String[] args) {
-        Client client = new Client();
+        ImageCodec codec = args.length > 0 ? ImageCodec.valueOf(args[0].toUpperCase()) : ImageCodec.JPEG;
+        int quality = args.length > 1 ? Integer.parseInt(args[1]) : ImageCodec.DEFAULT_QUALITY;
+        Client client = new Client(codec, quality);
         client.startClient();
     }
 }
@@ -0,0 +1,342 @@
+package application;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// @author Jared Scholz
+/* The framing used between Client and Server: [byte type][int payload length][payload]
+   Frames are read into and written from pooled direct buffers, header and payload with a single gather write.
+   Image payloads carry the id of their request, so several can be in progress at once, and their ImageCodec id,
+   so either side can always decode them */
+public class FrameChannel implements Closeable {
+
+    public static final byte IMAGE = 'i'; // [int request id][byte priority][byte codec id][encoded image]
+    public static final byte PROGRESS = 'p'; // [int request id][int progress]
+    public static final byte ENCODING = 'e'; // [byte codec id][byte quality]
+
+    private static final int HEADER_BYTES = 5;
+    private static final int IMAGE_HEADER_BYTES = 6;
+    private static final int PROGRESS_BYTES = 8;
+    private static final int ENCODING_BYTES = 2;
+    private static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+    private static final int INITIAL_IMAGE_BYTES = 64 * 1024;
+    private static final int INITIAL_READ_BYTES = 64 * 1024; // larger payloads get larger buffers as their bytes arrive
+
+    private final SocketChannel channel;
+    private final ByteBuffer readHeader; // only used by the reading thread
+    private final ByteBuffer writeHeader; // guarded by writeLock
+    private final ByteBuffer progressPayload; // guarded by writeLock
+    private final ReentrantLock writeLock;
+    private final Map<Integer, Integer> pendingProgress; // latest unsent progress of each request
+    private volatile ImageCodec codec;
+    private volatile int quality;
+
+    public FrameChannel(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(true); // each connection has its own (cheap) thread
+        readHeader = ByteBuffer.allocateDirect(HEADER_BYTES);
+        writeHeader = ByteBuffer.allocateDirect(HEADER_BYTES);
+        progressPayload = ByteBuffer.allocateDirect(PROGRESS_BYTES);
+        writeLock = new ReentrantLock();
+        pendingProgress = new ConcurrentHashMap<>();
+        codec = ImageCodec.JPEG;
+        quality = ImageCodec.DEFAULT_QUALITY;
+    }
+
+    /* The encoding used by writeImage() */
+    public void setEncoding(ImageCodec codec, int quality) {
+        if (quality < 1 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be between 1 and 100");
+        }
+        this.codec = codec;
+        this.quality = quality;
+    }
+
+    public ImageCodec getCodec() {
+        return codec;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    /* Blocks until a whole frame has arrived - the caller must release() it once done with the payload.
+       The buffer doubles as the payload arrives, so a peer cannot pin a large buffer just by claiming a large length */
+    public Frame readFrame() throws IOException {
+        readHeader.clear();
+        readFully(readHeader);
+        readHeader.flip();
+        byte type = readHeader.get();
+        int length = readHeader.getInt();
+        if (length < minimumLength(type) || length > MAX_PAYLOAD_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        ByteBuffer payload = BufferPool.getInstance().acquire(Math.min(length, INITIAL_READ_BYTES));
+        try {
+            while (true) {
+                payload.limit(Math.min(length, payload.capacity()));
+                readFully(payload);
+                if (payload.position() == length) {
+                    break;
+                }
+                payload = grow(payload, Math.min(length, payload.capacity() * 2));
+            }
+        } catch (IOException e) {
+            BufferPool.getInstance().release(payload);
+            throw e;
+        }
+        payload.flip();
+        return new Frame(type, payload);
+    }
+
+    /* Moves what has been put in the buffer into a larger pooled one, releasing the old one */
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer larger = BufferPool.getInstance().acquire(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        BufferPool.getInstance().release(buffer);
+        return larger;
+    }
+
+    private static int minimumLength(byte type) {
+        switch (type) {
+            case IMAGE:
+                return IMAGE_HEADER_BYTES;
+            case PROGRESS:
+                return PROGRESS_BYTES;
+            case ENCODING:
+                return ENCODING_BYTES;
+            default:
+                return 0; // unknown frames are skipped by the reader
+        }
+    }
+
+    /* The reply to a request carries the same id - the priority is only used by the server */
+    public void writeImage(int requestId, int priority, BufferedImage image) throws IOException {
+        ImageCodec codec = this.codec;
+        PooledOutputStream encoded = new PooledOutputStream(INITIAL_IMAGE_BYTES);
+        try {
+            encoded.buffer.putInt(requestId).put((byte) priority).put((byte) codec.getId());
+            codec.encode(image, quality, encoded); // encode straight into a direct buffer
+            ByteBuffer payload = encoded.buffer;
+            payload.flip();
+            writeLock.lock();
+            try {
+                pendingProgress.remove(requestId); // the reply means the request is done, so never follow it with progress
+                writeFrame(IMAGE, payload);
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            encoded.close();
+        }
+        flushProgress(); // progress that arrived while the image was being written
+    }
+
+    /* Tells the other side which encoding to use (client) or which one will be used (server) */
+    public void writeEncoding(ImageCodec codec, int quality) throws IOException {
+        writeLock.lock();
+        try {
+            ByteBuffer payload = ByteBuffer.allocateDirect(ENCODING_BYTES);
+            payload.put((byte) codec.getId()).put((byte) quality).flip();
+            writeFrame(ENCODING, payload);
+        } finally {
+            writeLock.unlock();
+        }
+        flushProgress();
+    }
+
+    /* Progress frames are coalesced - only the latest value of each request is kept until flushProgress() sends it.
+       Never blocks, so it is safe to call from a thread shared by every connection */
+    public void queueProgress(int requestId, int progress) {
+        pendingProgress.put(requestId, progress);
+    }
+
+    /* Whether queued progress is waiting with no write underway - a writer always flushes progress once it is done */
+    public boolean needsProgressFlush() {
+        return !pendingProgress.isEmpty() && !writeLock.isLocked();
+    }
+
+    /* Sends the queued progress, or leaves it to the write already underway. Blocks if the other side is not reading */
+    public void flushProgress() throws IOException {
+        // re-check after unlocking, in case a value arrived just as the previous holder released the lock
+        while (!pendingProgress.isEmpty() && writeLock.tryLock()) {
+            try {
+                for (Integer requestId : pendingProgress.keySet()) {
+                    Integer progress = pendingProgress.remove(requestId);
+                    if (progress != null) {
+                        progressPayload.clear();
+                        progressPayload.putInt(requestId).putInt(progress).flip();
+                        writeFrame(PROGRESS, progressPayload);
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private void writeFrame(byte type, ByteBuffer payload) throws IOException { // only to be used holding writeLock
+        writeHeader.clear();
+        writeHeader.put(type).putInt(payload.remaining()).flip();
+        ByteBuffer[] frame = {writeHeader, payload};
+        while (writeHeader.hasRemaining() || payload.hasRemaining()) { // usually a single call sends the whole frame
+            channel.write(frame);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed");
+            }
+        }
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    public InetAddress getRemoteAddress() {
+        return channel.socket().getInetAddress();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    /* A frame read from the channel, holding a pooled buffer until it is released */
+    public static final class Frame {
+
+        private final byte type;
+        private ByteBuffer payload;
+
+        private Frame(byte type, ByteBuffer payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public int getLength() { // of the payload
+            return payload.remaining();
+        }
+
+        public int getRequestId() { // of IMAGE and PROGRESS frames
+            return payload.getInt(0);
+        }
+
+        public int getPriority() { // of IMAGE frames
+            return payload.get(4);
+        }
+
+        public int readProgress() { // of PROGRESS frames
+            return payload.getInt(4);
+        }
+
+        public ImageCodec getCodec() throws IOException { // of IMAGE and ENCODING frames
+            return ImageCodec.fromId(payload.get(type == IMAGE ? IMAGE_HEADER_BYTES - 1 : 0));
+        }
+
+        public int readQuality() { // of ENCODING frames
+            return payload.get(1);
+        }
+
+        public BufferedImage readImage() throws IOException {
+            ImageCodec codec = getCodec();
+            ByteBuffer data = payload.duplicate();
+            data.position(IMAGE_HEADER_BYTES);
+            return codec.decode(data);
+        }
+
+        public void release() {
+            if (payload != null) {
+                BufferPool.getInstance().release(payload);
+                payload = null;
+            }
+        }
+    }
+
+    /* Lets ImageIO decode directly from a frame's buffer */
+    static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /* Lets ImageIO encode directly into a pooled buffer, moving to a larger one when it fills */
+    private static final class PooledOutputStream extends OutputStream {
+
+        private ByteBuffer buffer;
+
+        PooledOutputStream(int initialCapacity) {
+            buffer = BufferPool.getInstance().acquire(initialCapacity);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureRemaining(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensureRemaining(length);
+            buffer.put(bytes, offset, length);
+        }
+
+        private void ensureRemaining(int length) {
+            if (buffer.remaining() < length) {
+                buffer = grow(buffer, Math.max(buffer.capacity() * 2, buffer.position() + length));
+            }
+        }
+
+        @Override
+        public void close() {
+            if (buffer != null) {
+                BufferPool.getInstance().release(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package application;
+
+import tasks.LatencyHistogram;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+// @author Jared Scholz
+/* The encodings an image frame can be sent in - the client picks one when it connects and the server replies in kind.
+   Each codec keeps its own encode and decode timings */
+public enum ImageCodec {
+
+    RAW { // ARGB pixels as they are - no CPU spent, but the most bytes
+        @Override
+        void encodeImage(BufferedImage image, int quality, OutputStream out) throws IOException {
+            writeHeader(image, out);
+            writePixels(image, out);
+        }
+
+        @Override
+        BufferedImage decodeImage(ByteBuffer data) throws IOException {
+            BufferedImage image = readHeader(data);
+            int[] pixels = pixelsOf(image);
+            if (data.remaining() < pixels.length * 4) {
+                throw new IOException("Truncated " + this + " image");
+            }
+            data.asIntBuffer().get(pixels); // straight from the frame's buffer
+            return image;
+        }
+    },
+    RAW_DEFLATE { // ARGB pixels through a fast Deflater - lossless, and far cheaper than PNG's filtering
+        @Override
+        void encodeImage(BufferedImage image, int quality, OutputStream out) throws IOException {
+            writeHeader(image, out); // left uncompressed
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, CHUNK_BYTES);
+                writePixels(image, deflated);
+                deflated.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        BufferedImage decodeImage(ByteBuffer data) throws IOException {
+            BufferedImage image = readHeader(data);
+            int[] pixels = pixelsOf(image);
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+                IntBuffer ints = chunk.asIntBuffer();
+                int filled = 0;
+                while (filled < pixels.length) {
+                    int length = Math.min(CHUNK_BYTES, (pixels.length - filled) * 4);
+                    int read = 0;
+                    while (read < length) {
+                        int count = inflater.inflate(chunk.array(), read, length - read);
+                        if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                            throw new IOException("Truncated " + this + " image");
+                        }
+                        read += count;
+                    }
+                    ints.clear();
+                    ints.get(pixels, filled, length / 4);
+                    filled += length / 4;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt " + this + " image", e);
+            } finally {
+                inflater.end();
+            }
+            return image;
+        }
+    },
+    PNG { // lossless, compact, slow to encode
+        @Override
+        void encodeImage(BufferedImage image, int quality, OutputStream out) throws IOException {
+            if (!ImageIO.write(image, "png", out)) {
+                throw new IOException("No PNG writer available");
+            }
+        }
+
+        @Override
+        BufferedImage decodeImage(ByteBuffer data) throws IOException {
+            return readImageIO(data);
+        }
+    },
+    JPEG { // lossy at the chosen quality - the smallest, but quality is lost on every trip
+        @Override
+        void encodeImage(BufferedImage image, int quality, OutputStream out) throws IOException {
+            if (image.getColorModel().hasAlpha()) { // the JPEG writer cannot take an alpha channel
+                image = withoutAlpha(image);
+            }
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality / 100f);
+                writer.setOutput(imageOut);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        }
+
+        @Override
+        BufferedImage decodeImage(ByteBuffer data) throws IOException {
+            return readImageIO(data);
+        }
+    };
+
+    public static final int DEFAULT_QUALITY = 75; // ImageIO's own default
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int MAX_PIXELS = 16 * 1024 * 1024;
+
+    static {
+        ImageIO.setUseCache(false); // buffer encoded images in memory rather than in temporary files
+    }
+
+    private final LatencyHistogram encodeTimes = new LatencyHistogram();
+    private final LatencyHistogram decodeTimes = new LatencyHistogram();
+
+    abstract void encodeImage(BufferedImage image, int quality, OutputStream out) throws IOException;
+
+    abstract BufferedImage decodeImage(ByteBuffer data) throws IOException;
+
+    /* quality (1 - 100) only affects JPEG */
+    public final void encode(BufferedImage image, int quality, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        encodeImage(image, quality, out);
+        encodeTimes.record(System.nanoTime() - start);
+    }
+
+    /* Decodes the rest of the buffer */
+    public final BufferedImage decode(ByteBuffer data) throws IOException {
+        long start = System.nanoTime();
+        BufferedImage image = decodeImage(data);
+        decodeTimes.record(System.nanoTime() - start);
+        return image;
+    }
+
+    public LatencyHistogram.Snapshot getEncodeTimes() {
+        return encodeTimes.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getDecodeTimes() {
+        return decodeTimes.snapshot();
+    }
+
+    public static ImageCodec fromId(int id) throws IOException {
+        if (id < 0 || id >= values().length) {
+            throw new IOException("Unknown image encoding " + id);
+        }
+        return values()[id];
+    }
+
+    public int getId() {
+        return ordinal(); // (new codecs go on the end)
+    }
+
+    /* Raw images are [int width][int height][width * height ARGB ints] */
+    private static void writeHeader(BufferedImage image, OutputStream out) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(image.getWidth());
+        header.writeInt(image.getHeight());
+        header.flush();
+    }
+
+    private static void writePixels(BufferedImage image, OutputStream out) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+        IntBuffer ints = chunk.asIntBuffer();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width); // a row at a time, whatever the image type
+            for (int x = 0; x < width; ) {
+                int count = Math.min(ints.remaining(), width - x);
+                ints.put(row, x, count);
+                x += count;
+                if (!ints.hasRemaining()) {
+                    out.write(chunk.array(), 0, CHUNK_BYTES);
+                    ints.clear();
+                }
+            }
+        }
+        out.write(chunk.array(), 0, ints.position() * 4);
+    }
+
+    private static BufferedImage readHeader(ByteBuffer data) throws IOException {
+        if (data.remaining() < 8) {
+            throw new IOException("Truncated image header");
+        }
+        int width = data.getInt();
+        int height = data.getInt();
+        if (width < 1 || height < 1 || (long) width * height > MAX_PIXELS) {
+            throw new IOException("Invalid image size " + width + "x" + height);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static int[] pixelsOf(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static BufferedImage readImageIO(ByteBuffer data) throws IOException {
+        BufferedImage image = ImageIO.read(new FrameChannel.BufferInputStream(data));
+        if (image == null) {
+            throw new IOException("Unreadable image");
+        }
+        return image;
+    }
+
+    private static BufferedImage withoutAlpha(BufferedImage image) {
+        BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = opaque.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return opaque;
+    }
+}
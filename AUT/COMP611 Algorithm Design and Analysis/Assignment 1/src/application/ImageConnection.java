@@ -1,94 +1,132 @@
 package application;
 
+import tasks.FairScheduler;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.nio.ByteBuffer;
-import javax.imageio.ImageIO;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // @author Jared Scholz
 public class ImageConnection implements Runnable {
 
-    private final Socket socket;
+    private final FrameChannel channel;
     private final Server server;
+    private final ConcurrentMap<Integer, Boolean> processing; // requests whose image has not been sent back yet
+    private final AtomicBoolean flushing; // a progress writer is running for this connection
     private boolean stopRequested;
-    private DataOutputStream outputStream;
 
-    public ImageConnection(Socket socket, Server server) {
-        this.socket = socket;
+    public ImageConnection(SocketChannel socketChannel, Server server) throws IOException {
+        this.channel = new FrameChannel(socketChannel);
         this.server = server;
+        processing = new ConcurrentHashMap<>();
+        flushing = new AtomicBoolean(false);
         stopRequested = false;
-        outputStream = null;
-        try {
-            outputStream = new DataOutputStream(socket.getOutputStream());
-        } catch (IOException e) {
-            System.err.println("Server error: " + e);
-        }
     }
 
-    public synchronized void sendImage(BufferedImage image) {
-        if (!socket.isClosed()) {
+    public void sendImage(int requestId, BufferedImage image) {
+        endRequest(requestId); // progress still on its way is dropped rather than sent after the image
+        if (channel.isOpen()) {
             try {
-                outputStream.writeChar('i'); // send identification first
-                outputStream.flush();
-                // send image as a byte array along with the size:
-                ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-                ImageIO.write(image, "jpg", byteStream); // write image to the byte array
-                byte[] size = ByteBuffer.allocate(4).putInt(byteStream.size()).array(); // courtesy of StackOverflow (link below)
-                outputStream.write(size); // send the size of the byte array first
-                outputStream.write(byteStream.toByteArray()); // send the byte array
-                outputStream.flush();
+                channel.writeImage(requestId, FairScheduler.DEFAULT_PRIORITY, image); // header and encoded image go out in one gather write
             } catch (IOException e) {
                 System.err.println("Server error: " + e);
             }
         }
     }
 
-    public synchronized void sendProgress(Integer progress) {
-        if (!socket.isClosed()) {
-            try {
-                outputStream.writeChar('p'); // send identification first
-                outputStream.flush();
-                outputStream.writeInt(progress);
-                outputStream.flush();
-            } catch (IOException e) {
-                System.err.println("Server error: " + e);
-            }
+    /* Called by the ProgressDispatcher, which serves every connection, so it only queues the progress -
+       it is written by this connection's own progress writer, and a client that stops reading only stalls itself */
+    public void sendProgress(int requestId, Integer progress) {
+        if (channel.isOpen()) {
+            processing.computeIfPresent(requestId, (id, active) -> { // atomic with endRequest()
+                channel.queueProgress(id, progress);
+                return active;
+            });
+            startProgressWriter();
+        }
+    }
+
+    /* No more progress is sent for the request - once its image is sent, or its task fails or is cancelled */
+    public void endRequest(int requestId) {
+        processing.remove(requestId);
+    }
+
+    private void startProgressWriter() {
+        if (!channel.needsProgressFlush() || !flushing.compareAndSet(false, true)) {
+            return; // the running writer, or the write underway, sends it
+        }
+        try {
+            server.writeProgress(new Runnable() {
+                @Override
+                public void run() {
+                    do {
+                        try {
+                            channel.flushProgress(); // may block, but only on this client
+                        } catch (IOException e) {
+                            // the connection thread reports the disconnect
+                        }
+                        flushing.set(false);
+                    } while (channel.isOpen() && channel.needsProgressFlush() && flushing.compareAndSet(false, true));
+                }
+            });
+        } catch (RejectedExecutionException e) { // the server is stopping
+            flushing.set(false);
         }
     }
 
     @Override
     public void run() { // wait for input from the client
         try {
-            DataInputStream inputStream = new DataInputStream(socket.getInputStream());
             stopRequested = false;
-            while (!stopRequested && !socket.isClosed()) {
-                /* Code from StackOverflow https://stackoverflow.com/a/25096332 below */
-                byte[] sizeArray = new byte[4];
-                inputStream.readFully(sizeArray); // input stream blocks until data becomes available...
-                int size = ByteBuffer.wrap(sizeArray).asIntBuffer().get();
-                byte[] imageArray = new byte[size];
-                inputStream.readFully(imageArray);
-                BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageArray));
-                /* End code from StackOverflow */
-                server.processImage(image, this);
+            while (!stopRequested && channel.isOpen()) {
+                FrameChannel.Frame frame = channel.readFrame(); // blocks until data becomes available...
+                if (frame.getType() == FrameChannel.IMAGE) {
+                    processing.put(frame.getRequestId(), Boolean.TRUE);
+                    server.processImage(frame, this); // decoded on a worker, which then releases the frame
+                } else {
+                    try {
+                        if (frame.getType() == FrameChannel.ENCODING) {
+                            negotiate(frame);
+                        }
+                    } finally {
+                        frame.release();
+                    }
+                }
             }
-            outputStream.close(); // clean up
+            channel.close(); // clean up
         } catch (IOException e) {
-            System.out.println("Client " + socket.getInetAddress() + " disconnected");
+            System.out.println("Client " + getClientAddress() + " disconnected");
         }
     }
 
+    /* Use the encoding the client asked for, or keep the current one if it is unknown, and tell the client which */
+    private void negotiate(FrameChannel.Frame frame) throws IOException {
+        try {
+            channel.setEncoding(frame.getCodec(), Math.max(1, Math.min(100, frame.readQuality())));
+        } catch (IOException e) {
+            System.err.println("Client " + getClientAddress() + " asked for an unsupported encoding: " + e.getMessage());
+        }
+        channel.writeEncoding(channel.getCodec(), channel.getQuality());
+        System.out.println("Client " + getClientAddress() + " is using " + channel.getCodec());
+    }
+
+    public ImageCodec getCodec() {
+        return channel.getCodec();
+    }
+
+    public void close() { // release the socket once the connection is finished with
+        channel.close();
+    }
+
     public void requestStop() { // functions only after the next image is recieved!
         stopRequested = true;
     }
 
     public InetAddress getClientAddress() {
-        return socket.getInetAddress();
+        return channel.getRemoteAddress();
     }
 }
@@ -1,60 +1,194 @@
 package application;
 
 import tasks.Task;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.util.Random;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 // @author Jared Scholz
+/* Splits the image into bands of rows that are filtered in parallel, directly on the int pixel array.
+   The bands run in a ForkJoinPool given by the server, never the common pool, so their threads are the server's to size */
 public class ImageProcessor extends Task<BufferedImage, Integer> {
 
+    private static final int MIN_BAND_ROWS = 16; // smaller bands are not worth forking
+    private static final int PROGRESS_ROWS = 4; // rows between progress updates from each band
+
     private final ImageConnection client;
-    private final Random randGen;
+    private final ForkJoinPool bandPool; // this task's worker waits while its bands run here
+    private final AtomicReference<FrameChannel.Frame> encoded; // decoded here rather than on the connection thread, taken once
+    private final int requestId; // the client's id for the image, sent back with the result
+    private final boolean yieldPerSegment;
+    private final AtomicInteger rowsDone; // summed across all bands
+    private volatile int lastProgress; // written holding rowsDone's monitor, so progress never goes backwards
+    private int[] pixels;
+    private int offset;
+    private int stride;
+    private int width;
+    private int height;
+    private int bandRows;
+
+    public ImageProcessor(BufferedImage param, ImageConnection client, ForkJoinPool bandPool) {
+        this(param, client, bandPool, false);
+    }
+
+    /* yieldPerSegment - slow down threads to better show progression! */
+    public ImageProcessor(BufferedImage param, ImageConnection client, ForkJoinPool bandPool, boolean yieldPerSegment) {
+        this(param, null, client, bandPool, yieldPerSegment);
+    }
 
-    public ImageProcessor(BufferedImage param, ImageConnection client) {
+    /* Takes ownership of the frame, releasing it once decoded */
+    public ImageProcessor(FrameChannel.Frame encoded, ImageConnection client, ForkJoinPool bandPool) {
+        this(null, encoded, client, bandPool, false);
+    }
+
+    private ImageProcessor(BufferedImage param, FrameChannel.Frame encoded, ImageConnection client, ForkJoinPool bandPool,
+            boolean yieldPerSegment) {
         super(param);
         this.client = client;
-        randGen = new Random();
+        this.bandPool = bandPool;
+        this.encoded = new AtomicReference<>(encoded);
+        requestId = encoded == null ? 0 : encoded.getRequestId();
+        this.yieldPerSegment = yieldPerSegment;
+        rowsDone = new AtomicInteger();
+        lastProgress = 0;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    /* Releases the frame of a task that will not run, e.g. one cancelled before its turn - does nothing once it has run */
+    public void discard() {
+        FrameChannel.Frame frame = encoded.getAndSet(null);
+        if (frame != null) {
+            frame.release();
+        }
     }
 
     @Override
     public void run() {
         System.out.println("Task " + uniqueID + " starting for " + client.getClientAddress());
         notifyAll(0);
-        int width = param.getWidth();
-        int height = param.getHeight();
-        int maxSegmentWidth = width / 12;
-        for (int i = 0; i < height; i++) {
-            int j = 0;
-            while (j < width) {
-                // produce segment of random width...
-                int segmentEnd = j + randGen.nextInt(maxSegmentWidth) + 10;
-                // calculate average color of segment:
-                long redSum = 0;
-                long greenSum = 0;
-                long blueSum = 0;
-                int actualWidth = 0; // account for right image border
-                for (int k = j; k < segmentEnd && k < width; k++) {
-                    int currentRGB = param.getRGB(k, i);
-                    redSum += (currentRGB & 0x00FF0000) >>> 16;
-                    greenSum += (currentRGB & 0x0000FF00) >>> 8;
-                    blueSum += currentRGB & 0x000000FF;
-                    actualWidth++;
+        FrameChannel.Frame frame = encoded.getAndSet(null);
+        if (frame != null) {
+            try {
+                param = frame.readImage();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // fails the task's future
+            } finally {
+                frame.release();
+            }
+        }
+        param = toIntRGB(param);
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) param.getRaster().getSampleModel();
+        pixels = ((DataBufferInt) param.getRaster().getDataBuffer()).getData();
+        offset = param.getRaster().getDataBuffer().getOffset();
+        stride = model.getScanlineStride();
+        width = param.getWidth();
+        height = param.getHeight();
+        bandRows = Math.max(MIN_BAND_ROWS, height / (bandPool.getParallelism() * 4)); // a few bands per thread to balance the load
+        bandPool.invoke(new Band(0, height));
+        notifyAll(100);
+        client.sendImage(requestId, param);
+    }
+
+    /* Decoded images are usually 3-byte BGR - draw them onto an int raster that can be worked on directly */
+    private static BufferedImage toIntRGB(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = converted.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return converted;
+    }
+
+    private void filterRow(int row, ThreadLocalRandom randGen) {
+        int maxSegmentWidth = Math.max(1, width / 12);
+        int rowStart = offset + row * stride;
+        int j = 0;
+        while (j < width) {
+            // produce segment of random width...
+            int segmentEnd = Math.min(width, j + randGen.nextInt(maxSegmentWidth) + 10); // account for right image border
+            // calculate average color of segment:
+            long redSum = 0;
+            long greenSum = 0;
+            long blueSum = 0;
+            for (int k = j; k < segmentEnd; k++) {
+                int currentRGB = pixels[rowStart + k];
+                redSum += (currentRGB & 0x00FF0000) >>> 16;
+                greenSum += (currentRGB & 0x0000FF00) >>> 8;
+                blueSum += currentRGB & 0x000000FF;
+            }
+            int actualWidth = segmentEnd - j;
+            int newRGB = 255 << 24 // include alpha
+                    | (int) (redSum / actualWidth) << 16
+                    | (int) (greenSum / actualWidth) << 8
+                    | (int) (blueSum / actualWidth);
+            // apply average color to entire segment:
+            for (; j < segmentEnd; j++) {
+                pixels[rowStart + j] = newRGB;
+            }
+            if (yieldPerSegment) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void rowsFinished(int rows) { // aggregate progress across the bands
+        int done = rowsDone.addAndGet(rows);
+        int progress = (int) (((double) done / height) * 100);
+        if (progress > lastProgress && progress < 100) { // 100 is only sent once the whole image is done
+            synchronized (rowsDone) {
+                if (progress > lastProgress) {
+                    lastProgress = progress;
+                    notifyAll(progress);
                 }
-                int newRGB = 255 << 24 // include alpha
-                        | (int) (redSum / actualWidth) << 16
-                        | (int) (greenSum / actualWidth) << 8
-                        | (int) (blueSum / actualWidth);
-                // apply average color to entire segment:
-                for (; j < segmentEnd && j < width; j++) {
-                    param.setRGB(j, i, newRGB);
+            }
+        }
+    }
+
+    /* A range of rows - split in half until small enough, then filtered */
+    private class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int startRow;
+        private final int endRow;
+
+        Band(int startRow, int endRow) {
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (endRow - startRow > bandRows) {
+                int middle = (startRow + endRow) >>> 1;
+                invokeAll(new Band(startRow, middle), new Band(middle, endRow));
+                return;
+            }
+            ThreadLocalRandom randGen = ThreadLocalRandom.current();
+            int unreported = 0;
+            for (int i = startRow; i < endRow; i++) {
+                filterRow(i, randGen);
+                if (++unreported == PROGRESS_ROWS) { // send update every 4th row...
+                    rowsFinished(unreported);
+                    unreported = 0;
                 }
-                Thread.yield(); // slow down thread to better show progression!
             }
-            if (height % 4 == 0) { // send update every 4th row...
-                notifyAll((int) (((double) i / height) * 100));
+            if (unreported > 0) {
+                rowsFinished(unreported);
             }
         }
-        notifyAll(100);
-        client.sendImage(param);
     }
 }
@@ -0,0 +1,253 @@
+package application;
+
+import tasks.FairScheduler;
+import tasks.LatencyHistogram;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// @author Jared Scholz
+/* A headless load test for Server - opens connections speaking the Client protocol and streams synthetic images
+   at a fixed total rate, then reports throughput, end-to-end latency and the cost of progress messages.
+   Starts its own Server on localhost unless one is already listening.
+   Arguments: [connections] [images per second] [seconds] [codec] [image width] */
+public class LoadGenerator {
+
+    private static final int WARMUP_SECONDS = 2; // images sent in this time are not measured
+    private static final int DRAIN_SECONDS = 30; // longest wait for outstanding images after sending stops
+    private static final int SERVER_START_SECONDS = 10; // longest wait for the embedded server to bind its port
+    private static final int FRAME_HEADER_BYTES = 5;
+
+    private final int connections;
+    private final double imagesPerSecond;
+    private final int seconds;
+    private final ImageCodec codec;
+    private final int imageWidth;
+    private final LatencyHistogram latency; // from when each image was due to be sent, so a stalled sender still counts
+    private final LongAdder sent;
+    private final LongAdder completed;
+    private final LongAdder measured;
+    private final LongAdder failed;
+    private final LongAdder progressFrames;
+    private final LongAdder imageBytes;
+    private final AtomicInteger outstanding;
+    private volatile long measureFrom;
+
+    public LoadGenerator(int connections, double imagesPerSecond, int seconds, ImageCodec codec, int imageWidth) {
+        if (connections < 1 || imagesPerSecond <= 0 || seconds < 1 || imageWidth < 1) {
+            throw new IllegalArgumentException("Connections, rate, duration and image width must be positive");
+        }
+        this.connections = connections;
+        this.imagesPerSecond = imagesPerSecond;
+        this.seconds = seconds;
+        this.codec = codec;
+        this.imageWidth = imageWidth;
+        latency = new LatencyHistogram();
+        sent = new LongAdder();
+        completed = new LongAdder();
+        measured = new LongAdder();
+        failed = new LongAdder();
+        progressFrames = new LongAdder();
+        imageBytes = new LongAdder();
+        outstanding = new AtomicInteger();
+    }
+
+    public void run() throws IOException, InterruptedException {
+        System.out.println(connections + " connections, " + imagesPerSecond + " images/s, " + seconds + " s, "
+                + codec + ", " + imageWidth + "x" + imageWidth * 3 / 4 + " images");
+        Connection[] open = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            open[i] = new Connection(i);
+        }
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS + seconds);
+        for (Connection connection : open) {
+            connection.start(start, end);
+        }
+        for (Connection connection : open) {
+            connection.sender.join();
+        }
+        long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_SECONDS);
+        while (outstanding.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        long elapsed = System.nanoTime() - measureFrom;
+        for (Connection connection : open) {
+            connection.channel.close();
+        }
+        report(elapsed);
+    }
+
+    private void report(long elapsedNanos) {
+        LatencyHistogram.Snapshot times = latency.snapshot();
+        long images = completed.sum();
+        long progress = progressFrames.sum();
+        long progressBytes = progress * (FRAME_HEADER_BYTES + 8);
+        long totalBytes = progressBytes + imageBytes.sum();
+        System.out.printf("sent %d, completed %d, failed %d, still outstanding %d%n",
+                sent.sum(), images, failed.sum(), outstanding.get());
+        System.out.printf("throughput %.1f images/s (measured %d over %.1f s)%n",
+                measured.sum() / (elapsedNanos / 1e9), measured.sum(), elapsedNanos / 1e9);
+        System.out.printf("latency p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms%n",
+                times.getPercentile(0.5) / 1e6, times.getPercentile(0.99) / 1e6, times.getPercentile(0.999) / 1e6);
+        System.out.printf("progress %.1f frames/image, %d bytes/image, %.3f%% of bytes received%n",
+                images == 0 ? 0.0 : (double) progress / images, images == 0 ? 0 : progressBytes / images,
+                totalBytes == 0 ? 0.0 : 100.0 * progressBytes / totalBytes);
+    }
+
+    /* Noise over a gradient - compresses about as well as a photograph, unlike a blank image */
+    private BufferedImage syntheticImage(long seed) {
+        int height = imageWidth * 3 / 4;
+        BufferedImage image = new BufferedImage(imageWidth, Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < imageWidth; x++) {
+                int base = (x * 255 / imageWidth) << 16 | (y * 255 / image.getHeight()) << 8;
+                image.setRGB(x, y, base | random.nextInt(64));
+            }
+        }
+        return image;
+    }
+
+    /* One client connection, with a thread that sends on schedule and one that reads the replies */
+    private class Connection {
+
+        private final int index;
+        private final FrameChannel channel;
+        private final BufferedImage image;
+        private final Map<Integer, Long> dueAt; // request id to when it was due to be sent
+        private Thread sender;
+
+        public Connection(int index) throws IOException {
+            this.index = index;
+            channel = new FrameChannel(SocketChannel.open(new InetSocketAddress(Client.HOST_NAME, Client.HOST_PORT)));
+            channel.setEncoding(codec, ImageCodec.DEFAULT_QUALITY);
+            channel.writeEncoding(codec, ImageCodec.DEFAULT_QUALITY);
+            image = syntheticImage(index);
+            dueAt = new ConcurrentHashMap<>();
+        }
+
+        public void start(long start, long end) {
+            long interval = (long) (1e9 * connections / imagesPerSecond);
+            long offset = interval * index / connections; // spread the connections' sends apart
+            sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int requestId = 0;
+                    for (long due = start + offset; due < end; due += interval) {
+                        long wait;
+                        while ((wait = due - System.nanoTime()) > 0) { // parkNanos may return early
+                            LockSupport.parkNanos(wait);
+                        }
+                        dueAt.put(++requestId, due);
+                        outstanding.incrementAndGet();
+                        sent.increment();
+                        try {
+                            channel.writeImage(requestId, FairScheduler.DEFAULT_PRIORITY, image);
+                        } catch (IOException e) {
+                            dueAt.remove(requestId);
+                            outstanding.decrementAndGet();
+                            failed.increment();
+                            return;
+                        }
+                    }
+                }
+            }, "load-sender");
+            Thread receiver = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    receive();
+                }
+            }, "load-receiver");
+            receiver.setDaemon(true);
+            receiver.start();
+            sender.start();
+        }
+
+        private void receive() {
+            try {
+                while (channel.isOpen()) {
+                    FrameChannel.Frame frame = channel.readFrame();
+                    try {
+                        if (frame.getType() == FrameChannel.PROGRESS) {
+                            progressFrames.increment();
+                        } else if (frame.getType() == FrameChannel.IMAGE) {
+                            long now = System.nanoTime();
+                            Long due = dueAt.remove(frame.getRequestId());
+                            frame.readImage(); // decoding is part of the round trip
+                            imageBytes.add(FRAME_HEADER_BYTES + frame.getLength());
+                            completed.increment();
+                            outstanding.decrementAndGet();
+                            if (due != null && due >= measureFrom) {
+                                latency.record(now - due);
+                                measured.increment();
+                            }
+                        }
+                    } finally {
+                        frame.release();
+                    }
+                }
+            } catch (IOException e) {
+                // closed once the run is over
+            }
+        }
+    }
+
+    /* Tries to bind the server's port rather than connecting to it - a probe connection would be served as a client.
+       Only checks for an external server before starting one: probing while the embedded server binds could fail its bind */
+    private static boolean serverListening() {
+        ServerSocket probe;
+        try {
+            probe = new ServerSocket(Client.HOST_PORT);
+        } catch (IOException e) {
+            return true; // already bound
+        }
+        try {
+            probe.close();
+        } catch (IOException e) {
+            // the port is released either way
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        double imagesPerSecond = args.length > 1 ? Double.parseDouble(args[1]) : 20;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        ImageCodec codec = args.length > 3 ? ImageCodec.valueOf(args[3].toUpperCase()) : ImageCodec.RAW_DEFLATE;
+        int imageWidth = args.length > 4 ? Integer.parseInt(args[4]) : 640;
+        Server server = null;
+        if (!serverListening()) {
+            server = new Server();
+            Server embedded = server;
+            Thread serverThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    embedded.startServer();
+                }
+            }, "server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            if (!embedded.awaitStarted(SERVER_START_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Embedded server did not start within " + SERVER_START_SECONDS + " seconds");
+                System.exit(-1);
+            }
+        }
+        new LoadGenerator(connections, imagesPerSecond, seconds, codec, imageWidth).run();
+        if (server != null) {
+            System.out.println("server pool: " + server.getPoolMetrics());
+            server.printImageTimes();
+        }
+        System.exit(0); // the embedded server's threads are still running
+    }
+}
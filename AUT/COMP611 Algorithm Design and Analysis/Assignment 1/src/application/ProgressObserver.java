@@ -6,13 +6,15 @@ import tasks.TaskObserver;
 public class ProgressObserver implements TaskObserver<Integer> {
 
     private final ImageConnection interestedClient;
+    private final int requestId;
 
-    public ProgressObserver(ImageConnection interestedClient) {
+    public ProgressObserver(ImageConnection interestedClient, int requestId) {
         this.interestedClient = interestedClient;
+        this.requestId = requestId;
     }
 
     @Override
     public void process(Integer e) {
-        interestedClient.sendProgress(e);
+        interestedClient.sendProgress(requestId, e);
     }
 }
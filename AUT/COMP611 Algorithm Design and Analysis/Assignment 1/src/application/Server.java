@@ -1,54 +1,212 @@
 package application;
 
+import tasks.AutoScaler;
+import tasks.FairScheduler;
+import tasks.LatencyHistogram;
+import tasks.PoolMetrics;
 import tasks.ThreadPool;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 // @author Jared Scholz
 public class Server {
 
     public static final int PORT = 18181;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private static final int MIN_THREADS = 2;
+    private static final int MAX_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int MAX_CONNECTIONS = 10_000;
+    private static final int BAND_THREADS = Runtime.getRuntime().availableProcessors();
 
     private final ThreadPool threadPool;
+    private final AutoScaler autoScaler;
+    private final FairScheduler scheduler; // round robin between clients, each client's images by priority
+    private final ForkJoinPool bandPool; // filters the bands of every image - one thread per core, however large threadPool grows
+    private final ThreadFactory connectionThreads;
+    private final ExecutorService progressWriters; // at most one per connection, so a client that stops reading only stalls its own
+    private final Semaphore connectionPermits;
+    private final int maxConnections;
+    private final Map<ImageCodec, LatencyHistogram> imageTimes; // frame received until the reply is sent
+    private final CountDownLatch started; // opened once the port is bound
     private boolean stopRequested;
 
     public Server() {
-        threadPool = new ThreadPool(4); // 4 worker threads
+        this(MIN_THREADS, MAX_THREADS, MAX_CONNECTIONS, true);
+    }
+
+    public Server(int minThreads, int maxThreads, int maxConnections, boolean virtualThreads) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Connection cap must be greater than 0");
+        }
+        threadPool = new ThreadPool(minThreads); // images are still processed by the bounded pool
+        autoScaler = new AutoScaler(threadPool, minThreads, maxThreads); // grows the pool while images queue up
+        scheduler = new FairScheduler(threadPool);
+        bandPool = new ForkJoinPool(BAND_THREADS);
+        connectionThreads = virtualThreads ? virtualThreadFactory() : null;
+        progressWriters = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable writer) {
+                Thread thread = connectionThreads == null ? new Thread(writer, "progress-writer") : connectionThreads.newThread(writer);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        connectionPermits = new Semaphore(maxConnections);
+        this.maxConnections = maxConnections;
+        imageTimes = new EnumMap<>(ImageCodec.class);
+        for (ImageCodec codec : ImageCodec.values()) {
+            imageTimes.put(codec, new LatencyHistogram());
+        }
+        started = new CountDownLatch(1);
         stopRequested = false;
     }
 
+    /* Virtual threads make a blocked connection cost a few KB of heap rather than an OS thread with its own stack.
+       They are looked up reflectively so the server still builds and runs (with platform threads) before Java 21 */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class)
+                    .invoke(builder, "connection-", 0L);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads are not available, using a platform thread per connection");
+            return null;
+        }
+    }
+
+    public boolean usesVirtualThreads() {
+        return connectionThreads != null;
+    }
+
+    public int getOpenConnections() {
+        return maxConnections - connectionPermits.availablePermits();
+    }
+
+    /* Waits for startServer to bind the port - lets a caller running the server on another thread connect without probing */
+    public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        return started.await(timeout, unit);
+    }
+
+    public PoolMetrics getPoolMetrics() {
+        return threadPool.getMetrics();
+    }
+
+    public int getQueuedImages() { // waiting in the scheduler for their turn
+        return scheduler.getQueued();
+    }
+
+    public LatencyHistogram.Snapshot getImageTimes(ImageCodec codec) {
+        return imageTimes.get(codec).snapshot();
+    }
+
     /* Process an image recieved from a client - used by ImageConnection */
-    public void processImage(BufferedImage image, ImageConnection client) {
-        ImageProcessor processorTask = new ImageProcessor(image, client);
-        processorTask.addListener(new ProgressObserver(client));
-        threadPool.perform(processorTask);
+    public void processImage(FrameChannel.Frame encoded, ImageConnection client) {
+        long received = System.nanoTime();
+        ImageCodec codec = client.getCodec();
+        int priority = encoded.getPriority();
+        ImageProcessor processorTask = new ImageProcessor(encoded, client, bandPool); // decoding happens on the worker too
+        processorTask.addListener(new ProgressObserver(client, processorTask.getRequestId()));
+        scheduler.submit(client, priority, processorTask).whenComplete((result, e) -> {
+            if (e != null) {
+                processorTask.discard(); // a task that never ran still holds its frame
+                client.endRequest(processorTask.getRequestId());
+            }
+            if (e instanceof CancellationException) {
+                // the client left before its turn
+            } else if (e != null) {
+                System.err.println("Task " + processorTask.getId() + " failed: " + e);
+            } else {
+                imageTimes.get(codec).record(System.nanoTime() - received);
+            }
+        });
     } // now ImageProcessor and ProgressObserver communicate directly with ImageConnection
 
+    /* Runs a connection's progress writes off the ProgressDispatcher's thread - used by ImageConnection */
+    public void writeProgress(Runnable writer) {
+        progressWriters.execute(writer);
+    }
+
+    public void printImageTimes() {
+        for (ImageCodec codec : ImageCodec.values()) {
+            LatencyHistogram.Snapshot times = imageTimes.get(codec).snapshot();
+            if (times.getCount() > 0) {
+                System.out.println(codec + ": " + times.getCount() + " images, p50/p99 " + millis(times.getPercentile(0.5))
+                        + "/" + millis(times.getPercentile(0.99)) + " ms (decode p50 " + millis(codec.getDecodeTimes().getPercentile(0.5))
+                        + " ms, encode p50 " + millis(codec.getEncodeTimes().getPercentile(0.5)) + " ms)");
+            }
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
     public void startServer() {
-        ServerSocket serverSocket = null;
+        ServerSocketChannel serverSocket = null;
         try {
-            serverSocket = new ServerSocket(PORT);
+            serverSocket = ServerSocketChannel.open();
+            serverSocket.bind(new InetSocketAddress(PORT));
             System.out.println("Server started at " + InetAddress.getLocalHost() + " on port " + PORT);
+            started.countDown();
         } catch (IOException e) {
             System.err.println("Server cannot listen on port: " + e);
             System.exit(-1);
         }
         try {
             stopRequested = false;
+            autoScaler.start();
             while (!stopRequested) {
-                Socket socket = serverSocket.accept(); // blocks until a connection is made
-                System.out.println("Connection made with " + socket.getInetAddress());
-                ImageConnection connection = new ImageConnection(socket, this);
-                Thread thread = new Thread(connection); // allow for unlimited connection threads...
-                thread.start(); // (these are low-cost threads that are primarily blocking)
+                connectionPermits.acquire(); // at the cap, leave new clients in the listen backlog until one leaves
+                ImageConnection connection;
+                try {
+                    SocketChannel socket = serverSocket.accept(); // blocks until a connection is made
+                    System.out.println("Connection made with " + socket.socket().getInetAddress());
+                    connection = new ImageConnection(socket, this);
+                } catch (IOException e) {
+                    connectionPermits.release();
+                    throw e;
+                }
+                Runnable handler = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            connection.run();
+                        } finally {
+                            scheduler.cancel(connection); // drop its images still waiting for a turn
+                            connection.close();
+                            connectionPermits.release();
+                        }
+                    }
+                };
+                Thread thread = connectionThreads == null ? new Thread(handler) : connectionThreads.newThread(handler);
+                thread.start(); // (these threads are primarily blocking)
             }
             serverSocket.close();
+            autoScaler.requestStop();
             threadPool.destroyPool(); // clean up
+            threadPool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS); // let queued images finish
+            bandPool.shutdown();
+            progressWriters.shutdown();
+            printImageTimes();
         } catch (IOException e) {
             System.err.println("Cannot accept client connection: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -0,0 +1,113 @@
+package tasks;
+
+// @author Jared Scholz
+/* Grows and shrinks a ThreadPool between bounds, from the queueing delay and utilisation it measures */
+public class AutoScaler extends Thread {
+
+    public static final long DEFAULT_SAMPLE_MILLIS = 250;
+    public static final long DEFAULT_TARGET_QUEUE_DELAY_MILLIS = 20;
+    /* Hysteresis - pressure must last a little while before growing, and idleness a lot longer before shrinking */
+    private static final int GROW_AFTER_SAMPLES = 2;
+    private static final int SHRINK_AFTER_SAMPLES = 12;
+    private static final double GROW_UTILISATION = 0.75;
+    private static final double SHRINK_UTILISATION = 0.4;
+    private static final double QUEUE_DELAY_PERCENTILE = 0.9;
+
+    private final ThreadPool pool;
+    private final int minSize;
+    private final int maxSize;
+    private final long sampleMillis;
+    private final long targetQueueDelayNanos;
+    private volatile boolean stopRequested;
+    private volatile PoolMetrics lastMetrics;
+    private int pressuredSamples; // only touched by this thread
+    private int idleSamples;
+
+    public AutoScaler(ThreadPool pool, int minSize, int maxSize) {
+        this(pool, minSize, maxSize, DEFAULT_SAMPLE_MILLIS, DEFAULT_TARGET_QUEUE_DELAY_MILLIS);
+    }
+
+    public AutoScaler(ThreadPool pool, int minSize, int maxSize, long sampleMillis, long targetQueueDelayMillis) {
+        super("ThreadPool-autoscaler");
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Bounds must satisfy 1 <= minSize <= maxSize");
+        }
+        if (sampleMillis < 1 || targetQueueDelayMillis < 1) {
+            throw new IllegalArgumentException("Sample period and target queue delay must be positive");
+        }
+        this.pool = pool;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.sampleMillis = sampleMillis;
+        this.targetQueueDelayNanos = targetQueueDelayMillis * 1_000_000;
+        stopRequested = false;
+        lastMetrics = pool.getMetrics();
+        pressuredSamples = 0;
+        idleSamples = 0;
+        setDaemon(true); // never keeps the application alive
+    }
+
+    public PoolMetrics getLastMetrics() { // the metrics the last decision was made from
+        return lastMetrics;
+    }
+
+    @Override
+    public void run() {
+        clamp();
+        while (!stopRequested) {
+            try {
+                Thread.sleep(sampleMillis);
+            } catch (InterruptedException e) {
+                break; // requestStop interrupts the sleep
+            }
+            try {
+                sample();
+            } catch (IllegalStateException e) {
+                break; // the pool was destroyed
+            }
+        }
+    }
+
+    public void requestStop() {
+        stopRequested = true;
+        interrupt();
+    }
+
+    private void clamp() { // start within the bounds
+        int size = pool.getSize();
+        if (size < minSize || size > maxSize) {
+            pool.resize(Math.max(minSize, Math.min(maxSize, size)));
+        }
+    }
+
+    private void sample() {
+        PoolMetrics previous = lastMetrics;
+        PoolMetrics current = pool.getMetrics();
+        lastMetrics = current;
+        int size = current.getSize();
+        if (size == 0) {
+            throw new IllegalStateException("ThreadPool is destroyed");
+        }
+        // delay of the tasks that started during this sample, and how busy the threads are right now:
+        long queueDelay = current.getQueueDelay().since(previous.getQueueDelay()).getPercentile(QUEUE_DELAY_PERCENTILE);
+        double utilisation = (double) current.getRunningTasks() / size;
+        boolean backlog = current.getQueueDepth() > 0;
+
+        if ((queueDelay > targetQueueDelayNanos || backlog) && utilisation >= GROW_UTILISATION) {
+            idleSamples = 0;
+            if (++pressuredSamples >= GROW_AFTER_SAMPLES && size < maxSize) {
+                pool.resize(Math.min(maxSize, size + Math.max(1, size / 2))); // grow quickly...
+                pressuredSamples = 0;
+            }
+        } else if (queueDelay < targetQueueDelayNanos / 4 && !backlog && utilisation < SHRINK_UTILISATION) {
+            pressuredSamples = 0;
+            if (++idleSamples >= SHRINK_AFTER_SAMPLES && size > minSize) {
+                pool.resize(size - 1); // ...and shrink slowly
+                idleSamples = 0;
+            }
+        } else { // between the thresholds - hold the current size
+            pressuredSamples = 0;
+            idleSamples = 0;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package tasks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+// @author Jared Scholz
+/* Holds tasks in front of a ThreadPool and decides which to perform next: round robin between the owners (e.g. clients)
+   with tasks waiting, then each owner's highest priority task, oldest first. Priorities only order an owner's own tasks,
+   so no owner can starve the others however high it sets them */
+public class FairScheduler {
+
+    public static final int MIN_PRIORITY = 0;
+    public static final int MAX_PRIORITY = 9;
+    public static final int DEFAULT_PRIORITY = 4;
+    /* Tasks handed to the pool per thread - one running plus one queued keeps the threads busy between dispatches
+       and leaves the pool a backlog for its AutoScaler to see, while the rest wait here to be ordered fairly */
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+
+    private final ThreadPool pool;
+    private final Map<Object, PriorityQueue<Scheduled>> owners; // in round robin order, each with its waiting tasks
+    private long submitted; // everything below guarded by this scheduler's lock
+    private int queued;
+    private int inFlight;
+
+    public FairScheduler(ThreadPool pool) {
+        this.pool = pool;
+        owners = new LinkedHashMap<>();
+        submitted = 0;
+        queued = 0;
+        inFlight = 0;
+    }
+
+    public CompletableFuture<Void> submit(Object owner, Runnable task) {
+        return submit(owner, DEFAULT_PRIORITY, task);
+    }
+
+    /* Returns a future that completes once the task has run - out of range priorities are clamped */
+    public CompletableFuture<Void> submit(Object owner, int priority, Runnable task) {
+        if (owner == null || task == null) {
+            throw new NullPointerException("Owner and task cannot be null");
+        }
+        Scheduled scheduled;
+        synchronized (this) {
+            scheduled = new Scheduled(task, Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, priority)), submitted++);
+            PriorityQueue<Scheduled> tasks = owners.get(owner);
+            if (tasks == null) {
+                tasks = new PriorityQueue<>();
+                owners.put(owner, tasks); // a new owner joins the end of the round
+            }
+            tasks.add(scheduled);
+            queued++;
+        }
+        dispatch();
+        return scheduled.future;
+    }
+
+    /* Drops the owner's tasks that have not reached the pool yet - their futures are cancelled */
+    public void cancel(Object owner) {
+        List<Scheduled> cancelled = new ArrayList<>();
+        synchronized (this) {
+            PriorityQueue<Scheduled> tasks = owners.remove(owner);
+            if (tasks != null) {
+                cancelled.addAll(tasks);
+                queued -= tasks.size();
+            }
+        }
+        for (Scheduled scheduled : cancelled) {
+            scheduled.future.completeExceptionally(new CancellationException("Owner cancelled"));
+        }
+    }
+
+    public synchronized int getQueued() { // waiting here, not yet performed by the pool
+        return queued;
+    }
+
+    public synchronized int getInFlight() { // performed by the pool but not yet finished
+        return inFlight;
+    }
+
+    private void dispatch() {
+        List<Scheduled> ready = new ArrayList<>();
+        synchronized (this) {
+            int limit = pool.getSize() * IN_FLIGHT_PER_THREAD; // follows the pool as it is resized
+            while (inFlight < limit && queued > 0) {
+                ready.add(next());
+                queued--;
+                inFlight++;
+            }
+        }
+        for (Scheduled scheduled : ready) { // perform outside the lock, completions call back into dispatch
+            try {
+                pool.perform(scheduled.task).whenComplete((result, e) -> {
+                    finished();
+                    if (e == null) {
+                        scheduled.future.complete(null);
+                    } else {
+                        scheduled.future.completeExceptionally(e);
+                    }
+                });
+            } catch (IllegalStateException e) { // the pool was destroyed - nothing more will be dispatched
+                synchronized (this) {
+                    inFlight--;
+                }
+                scheduled.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private Scheduled next() { // only to be used while holding this scheduler's lock, with queued > 0
+        Iterator<Map.Entry<Object, PriorityQueue<Scheduled>>> round = owners.entrySet().iterator();
+        if (!round.hasNext()) {
+            throw new IllegalStateException("Nothing queued");
+        }
+        Map.Entry<Object, PriorityQueue<Scheduled>> first = round.next();
+        Scheduled scheduled = first.getValue().poll();
+        round.remove();
+        if (!first.getValue().isEmpty()) {
+            owners.put(first.getKey(), first.getValue()); // back of the round
+        }
+        return scheduled;
+    }
+
+    private void finished() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    /* A task waiting in the scheduler, with the future given to whoever submitted it - ordered highest priority first,
+       then in the order submitted */
+    private static class Scheduled implements Comparable<Scheduled> {
+
+        private final Runnable task;
+        private final int priority;
+        private final long sequence;
+        private final CompletableFuture<Void> future;
+
+        public Scheduled(Runnable task, int priority, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+            future = new CompletableFuture<>();
+        }
+
+        @Override
+        public int compareTo(Scheduled other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package tasks;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// @author Jared Scholz
+/* A lock-free histogram of nanosecond durations - buckets double in width, split into 8 sub-buckets (within 12.5%) */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS * 2 + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+    }
+
+    public void record(long nanos) {
+        counts.incrementAndGet(index(Math.max(0, nanos)));
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS * 2) {
+            return (int) value; // small values are exact
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * 2 + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowestValue(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS * 2) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long subBucket = (index - SUB_BUCKETS * 2) % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /* The counts at one point in time - snapshots can be subtracted to get the durations recorded in between */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long total;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            total = sum;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /* The duration that the given fraction (0 to 1) of recorded durations did not exceed, or 0 if none were recorded */
+        public long getPercentile(double fraction) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i + 1 < counts.length ? lowestValue(i + 1) - 1 : Long.MAX_VALUE; // top of the bucket
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public Snapshot since(Snapshot earlier) {
+            long[] difference = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                difference[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(difference);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package tasks;
+
+// @author Jared Scholz
+/* An immutable snapshot of a ThreadPool's counters - see ThreadPool.getMetrics() */
+public final class PoolMetrics {
+
+    private final long timestamp; // System.nanoTime() when taken
+    private final int size;
+    private final int available;
+    private final int queueDepth;
+    private final int runningTasks;
+    private final long completedTasks;
+    private final long busyNanos;
+    private final long stealCount;
+    private final LatencyHistogram.Snapshot queueDelay;
+    private final LatencyHistogram.Snapshot taskLatency;
+
+    PoolMetrics(long timestamp, int size, int available, int queueDepth, int runningTasks, long completedTasks,
+            long busyNanos, long stealCount, LatencyHistogram.Snapshot queueDelay, LatencyHistogram.Snapshot taskLatency) {
+        this.timestamp = timestamp;
+        this.size = size;
+        this.available = available;
+        this.queueDepth = queueDepth;
+        this.runningTasks = runningTasks;
+        this.completedTasks = completedTasks;
+        this.busyNanos = busyNanos;
+        this.stealCount = stealCount;
+        this.queueDelay = queueDelay;
+        this.taskLatency = taskLatency;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getAvailable() {
+        return available;
+    }
+
+    public int getQueueDepth() { // tasks performed but not yet started
+        return queueDepth;
+    }
+
+    public int getRunningTasks() {
+        return runningTasks;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    public long getBusyNanos() { // total time spent running tasks, summed over all threads
+        return busyNanos;
+    }
+
+    public long getStealCount() {
+        return stealCount;
+    }
+
+    public LatencyHistogram.Snapshot getQueueDelay() { // time from perform() until a thread starts the task
+        return queueDelay;
+    }
+
+    public LatencyHistogram.Snapshot getTaskLatency() { // time from perform() until the task has finished
+        return taskLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size + ", available=" + available + ", queued=" + queueDepth + ", running=" + runningTasks
+                + ", completed=" + completedTasks + ", steals=" + stealCount
+                + ", latency p50/p99/p99.9=" + millis(taskLatency.getPercentile(0.5)) + "/"
+                + millis(taskLatency.getPercentile(0.99)) + "/" + millis(taskLatency.getPercentile(0.999)) + " ms"
+                + ", queue delay p99=" + millis(queueDelay.getPercentile(0.99)) + " ms";
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,63 @@
+package tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// @author Jared Scholz
+/* Delivers Task progress to observers on its own thread, so a slow observer never holds up the task.
+   Each round delivers the latest progress of every task that has changed, then waits before the next */
+final class ProgressDispatcher extends Thread { // singleton design pattern
+
+    private static final ProgressDispatcher instance = new ProgressDispatcher();
+
+    private static final long DELIVERY_INTERVAL_NANOS = 50_000_000; // at most 20 updates a second per task
+
+    private final Queue<Task<?, ?>> changed;
+
+    private ProgressDispatcher() {
+        super("task-progress");
+        changed = new ConcurrentLinkedQueue<>();
+        setDaemon(true); // never keeps the application alive
+        start();
+    }
+
+    static ProgressDispatcher getInstance() {
+        return instance;
+    }
+
+    void schedule(Task<?, ?> task) { // each task is queued at most once until its progress is delivered
+        changed.add(task);
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        List<Task<?, ?>> round = new ArrayList<>();
+        while (true) {
+            Task<?, ?> task;
+            while ((task = changed.poll()) != null) { // tasks that change again during this round wait for the next
+                round.add(task);
+            }
+            if (round.isEmpty()) {
+                LockSupport.park(this); // until the next schedule()
+                continue;
+            }
+            for (Task<?, ?> current : round) {
+                try {
+                    current.deliverProgress();
+                } catch (RuntimeException e) { // keep delivering to everyone else
+                    System.err.println("Progress observer of task " + current.getId() + " failed: " + e);
+                }
+            }
+            round.clear();
+            long until = System.nanoTime() + DELIVERY_INTERVAL_NANOS;
+            long wait;
+            while ((wait = until - System.nanoTime()) > 0) { // schedule() unparks, so keep waiting
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+}
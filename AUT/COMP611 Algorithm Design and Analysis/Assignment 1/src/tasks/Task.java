@@ -3,16 +3,24 @@ package tasks;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 // @author Jared Scholz
 public abstract class Task<E, F> implements Runnable { // uses the template pattern
 
+    private static final Object NO_PROGRESS = new Object();
+
     private final List<TaskObserver<F>> listeners;
+    private final AtomicReference<Object> pendingProgress; // the latest progress not yet delivered
+    private final AtomicBoolean deliveryScheduled;
     protected final int uniqueID;
     protected E param;
 
     public Task(E param) {
         listeners = new ArrayList<>();
+        pendingProgress = new AtomicReference<>(NO_PROGRESS);
+        deliveryScheduled = new AtomicBoolean(false);
         uniqueID = UniqueIdentifier.getInstance().getID();
         this.param = param;
     }
@@ -36,11 +44,28 @@ public abstract class Task<E, F> implements Runnable { // uses the template patt
         }
     }
 
+    /* Returns immediately - observers are called later from the ProgressDispatcher's thread, and only see the latest
+       progress if it changed several times in between */
     protected final void notifyAll(F progress) { // concrete method
-        synchronized (listeners) {
-            for (TaskObserver<F> listener : listeners) {
-                listener.process(progress);
-            }
+        pendingProgress.set(progress);
+        if (deliveryScheduled.compareAndSet(false, true)) {
+            ProgressDispatcher.getInstance().schedule(this);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    final void deliverProgress() { // only to be used by ProgressDispatcher
+        deliveryScheduled.set(false); // progress from now on schedules another delivery
+        Object progress = pendingProgress.getAndSet(NO_PROGRESS);
+        if (progress == NO_PROGRESS) {
+            return; // already delivered by the previous round
+        }
+        List<TaskObserver<F>> current;
+        synchronized (listeners) { // observers are called without the lock, so they cannot block addListener
+            current = new ArrayList<>(listeners);
+        }
+        for (TaskObserver<F> listener : current) {
+            listener.process((F) progress);
         }
     }
 }
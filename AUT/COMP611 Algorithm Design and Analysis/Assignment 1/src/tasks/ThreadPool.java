@@ -3,7 +3,12 @@ package tasks;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 // @author Jared Scholz
 public class ThreadPool {
@@ -11,17 +16,46 @@ public class ThreadPool {
     private int size;
     private volatile BlockingQueue<ReusableThread> threadPool;
     private final BlockingQueue<Runnable> waitingTasks;
-    private boolean destroyed;
+    private volatile boolean destroyed;
+    private final AtomicInteger pendingTasks; // performed but not yet finished
+    private final CountDownLatch terminated; // released once destroyed and every task has finished
     /* Variables for shrinking (resize) below */
     private boolean shrinking; // not declared volatile for better average speed
     private volatile int decreaseBy;
     private final Object shrinkMonitor;
+    private final WorkStealingExecutor stealingExecutor; // null unless in work-stealing mode
+    /* Metrics (both modes) below */
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LatencyHistogram queueDelay = new LatencyHistogram();
+    private final LatencyHistogram taskLatency = new LatencyHistogram();
 
     public ThreadPool(int initialSize) {
+        this(initialSize, false);
+    }
+
+    public ThreadPool(int initialSize, boolean workStealing) { // work stealing gives each thread its own task deque
+        if (initialSize < 1) {
+            throw new IllegalArgumentException("Size must be greater than 0");
+        }
+        if (workStealing) {
+            stealingExecutor = new WorkStealingExecutor(initialSize);
+            threadPool = null;
+            waitingTasks = null;
+            pendingTasks = null;
+            terminated = null;
+            shrinkMonitor = null;
+            return;
+        }
+        stealingExecutor = null;
         size = initialSize;
         threadPool = new ArrayBlockingQueue<>(size);
         waitingTasks = new LinkedBlockingQueue<>();
         destroyed = false;
+        pendingTasks = new AtomicInteger();
+        terminated = new CountDownLatch(1);
         shrinking = false;
         decreaseBy = 0;
         shrinkMonitor = new Object();
@@ -35,85 +69,189 @@ public class ThreadPool {
         }
     }
 
+    public boolean isWorkStealing() {
+        return stealingExecutor != null;
+    }
+
     public int getSize() {
+        if (stealingExecutor != null) {
+            return stealingExecutor.getSize();
+        }
         return size;
     }
 
     public int getAvailable() {
+        if (stealingExecutor != null) {
+            return stealingExecutor.getAvailable();
+        }
         return threadPool.size();
     }
 
+    public long getStealCount() { // always 0 unless in work-stealing mode
+        if (stealingExecutor != null) {
+            return stealingExecutor.getStealCount();
+        }
+        return 0;
+    }
+
+    public PoolMetrics getMetrics() { // counters are read one by one, so may be slightly out of step with each other
+        return new PoolMetrics(System.nanoTime(), getSize(), getAvailable(), queuedTasks.get(), runningTasks.get(),
+                completedTasks.sum(), busyNanos.sum(), getStealCount(), queueDelay.snapshot(), taskLatency.snapshot());
+    }
+
     public synchronized void resize(int newSize) { // returns immediately
+        if (stealingExecutor != null) {
+            stealingExecutor.resize(newSize);
+            return;
+        }
         if (destroyed) {
             throw new IllegalStateException("ThreadPool is destroyed");
         }
         if (newSize < 1) {
             throw new IllegalArgumentException("Size must be greater than 0");
         }
-        if (shrinking) {
-            throw new IllegalStateException("ThreadPool is currently shrinking");
+        int added = 0;
+        synchronized (shrinkMonitor) { // a resize may arrive while an earlier shrink is still in progress
+            if (newSize > size) {
+                int cancelled = Math.min(decreaseBy, newSize - size); // keep threads that were due to stop first
+                decreaseBy -= cancelled;
+                added = newSize - size - cancelled;
+            } else {
+                decreaseBy += size - newSize;
+            }
+            shrinking = decreaseBy > 0;
         }
-        if (newSize > size) {
+        if (added > 0) {
             BlockingQueue<ReusableThread> oldPool = threadPool;
-            threadPool = new ArrayBlockingQueue<>(newSize);
-            addThreads(newSize - size);
+            threadPool = new ArrayBlockingQueue<>(newSize + decreaseBy); // room for threads yet to stop
+            addThreads(added);
             threadPool.addAll(oldPool); // also collects any threads added to oldPool during transition
-        } else if (newSize < size) {
-            synchronized (shrinkMonitor) {
-                decreaseBy = size - newSize;
-                shrinking = true;
-            }
         }
         size = newSize;
+        stopIdleThreads();
+    }
+
+    private void stopIdleThreads() { // only to be used while holding this pool's lock
+        // waiting threads would only see a shrink after their next task, so stop them now:
+        synchronized (shrinkMonitor) {
+            ReusableThread idle;
+            while (decreaseBy > 0 && (idle = threadPool.poll()) != null) {
+                decreaseBy--;
+                idle.requestStop();
+            }
+            shrinking = decreaseBy > 0; // busy threads stop when they finish their task
+        }
     }
 
-    public synchronized void destroyPool() { // returns immediately
+    public synchronized void destroyPool() { // returns immediately, tasks already performed still run
+        if (stealingExecutor != null) {
+            stealingExecutor.destroyPool();
+            return;
+        }
         if (!destroyed) {
-            // destroy the pool using one of its own threads:
-            perform(new Runnable() {
-                @Override
-                public void run() {
-                    Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
-                    int targetSize = size - 1;
-                    size = 0; // update size to reflect destruction
-                    do {
-                        // reactivate any lazy threads:
-                        for (ReusableThread current : threadPool) {
-                            synchronized (current) {
-                                current.notify(); // prompt waiting threads to check waitingTasks again
-                            }
-                        }
-                        // ensure all tasks are completed:
-                        while (threadPool.size() < targetSize) { // (a thread will not re-enter the pool with tasks waiting)
-                            // this approach, although inefficient now, means that threads do not need to notify externally
-                            Thread.yield();
-                        }
-                    } while (!waitingTasks.isEmpty()); // destroy only with 100% confidence that all tasks are complete...
-                    // stop all threads (including this one):
-                    for (ReusableThread current : threadPool) {
-                        current.requestStop();
-                    }
-                    ((ReusableThread) Thread.currentThread()).requestStop();
-                }
-            });
             destroyed = true; // block any further task additions
+            size = 0; // update size to reflect destruction
+            if (pendingTasks.get() == 0) {
+                terminate();
+            } // otherwise the thread that finishes the last task terminates the pool - no thread waits for it
         }
     }
 
-    public synchronized boolean perform(Runnable task) { // returns immediately
-        if (destroyed) {
-            throw new IllegalStateException("ThreadPool is destroyed");
+    /* Blocks until the pool is destroyed and every task has finished, or the timeout elapses */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (stealingExecutor != null) {
+            return stealingExecutor.awaitTermination(timeout, unit);
+        }
+        return terminated.await(timeout, unit);
+    }
+
+    private void terminate() { // only to be used while holding this pool's lock
+        if (terminated.getCount() > 0) {
+            // stop all waiting threads, busy threads stop themselves when they next look for work:
+            for (ReusableThread current : threadPool) {
+                current.requestStop();
+            }
+            threadPool.clear();
+            terminated.countDown();
+        }
+    }
+
+    private void taskFinished() {
+        if (pendingTasks.decrementAndGet() == 0 && destroyed) {
+            synchronized (this) {
+                terminate();
+            }
         }
+    }
+
+    /* Returns a future that completes when the task has run, or completes exceptionally with anything it throws */
+    public CompletableFuture<Void> perform(Runnable task) { // returns immediately
         if (task == null) {
             throw new NullPointerException("Task cannot be null");
         }
+        TrackedTask tracked = new TrackedTask(task);
+        try {
+            if (stealingExecutor != null) {
+                stealingExecutor.perform(tracked); // lock-free submit path
+            } else {
+                performQueued(tracked);
+            }
+        } catch (IllegalStateException e) {
+            queuedTasks.decrementAndGet(); // rejected
+            throw e;
+        }
+        return tracked.future;
+    }
+
+    private synchronized void performQueued(Runnable task) {
+        if (destroyed) {
+            throw new IllegalStateException("ThreadPool is destroyed");
+        }
+        pendingTasks.incrementAndGet();
         ReusableThread worker = threadPool.poll();
         if (worker == null) {
             waitingTasks.add(task); // queue for a future worker
-            return false;
         } else {
             worker.runTask(task);
-            return true;
+        }
+    }
+
+    /* A TrackedTask completes a future for the task it runs */
+    private class TrackedTask implements Runnable { // also records the metrics for the task
+
+        private final Runnable task;
+        private final CompletableFuture<Void> future;
+        private final long performedAt;
+
+        public TrackedTask(Runnable task) {
+            this.task = task;
+            future = new CompletableFuture<>();
+            performedAt = System.nanoTime();
+            queuedTasks.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            long startedAt = System.nanoTime();
+            queuedTasks.decrementAndGet();
+            runningTasks.incrementAndGet();
+            queueDelay.record(startedAt - performedAt);
+            Throwable failure = null;
+            try {
+                task.run();
+            } catch (Throwable e) { // keep the worker thread alive, the caller sees the failure through the future
+                failure = e;
+            }
+            long finishedAt = System.nanoTime();
+            busyNanos.add(finishedAt - startedAt);
+            taskLatency.record(finishedAt - performedAt);
+            runningTasks.decrementAndGet();
+            completedTasks.increment();
+            if (failure == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(failure);
+            }
         }
     }
 
@@ -159,18 +297,34 @@ public class ThreadPool {
                 // Stage 2 - enter the pool if there is nothing to do immediately:
                 if (currentTask == null && !stopRequested) {
                     synchronized (this) { // do not allow runTask/requestStop to occur before entering waiting state
-                        threadPool.add(this);
-                        try {
-                            wait(); // wait to be reused
-                        } catch (InterruptedException ex) {
-                            // IGNORE
+                        synchronized (ThreadPool.this) { // perform() cannot queue a task between this check and entering the pool
+                            currentTask = waitingTasks.poll();
+                            if (currentTask == null) {
+                                if (destroyed && pendingTasks.get() == 0) {
+                                    stopRequested = true; // the pool has terminated
+                                } else {
+                                    threadPool.add(this);
+                                    if (shrinking) {
+                                        stopIdleThreads(); // a shrink started since stage 1 (may stop this thread)
+                                    }
+                                }
+                            }
+                        }
+                        while (currentTask == null && !stopRequested) { // (ignore spurious wake-ups)
+                            try {
+                                wait(); // wait to be reused
+                            } catch (InterruptedException ex) {
+                                // IGNORE
+                            }
                         }
                     }
                 }
                 // Stage 3 - run the current task:
                 if (!stopRequested && currentTask != null) {
                     currentTask.run();
+                    currentTask = null;
                     setPriority(Thread.NORM_PRIORITY); // reset any changes made in task
+                    taskFinished();
                 }
             }
         }
@@ -0,0 +1,90 @@
+package tasks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// @author Jared Scholz
+/* Compares the throughput of both ThreadPool modes and ForkJoinPool on many short tasks */
+public class ThreadPoolBenchmark {
+
+    private static final int TASKS = 200_000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final AtomicLong sink = new AtomicLong(); // stops the task body being optimised away
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int submitters = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        System.out.println(TASKS + " tasks, " + threads + " pool threads, " + submitters + " submitting threads");
+
+        ThreadPool queued = new ThreadPool(threads);
+        report("ThreadPool (queued)", queued::perform, submitters);
+        queued.destroyPool();
+        queued.awaitTermination(10, TimeUnit.SECONDS);
+
+        ThreadPool stealing = new ThreadPool(threads, true);
+        report("ThreadPool (work-stealing)", stealing::perform, submitters);
+        System.out.println("  steals: " + stealing.getStealCount());
+        stealing.destroyPool();
+        stealing.awaitTermination(10, TimeUnit.SECONDS);
+
+        ForkJoinPool forkJoin = new ForkJoinPool(threads);
+        report("ForkJoinPool", forkJoin::execute, submitters);
+        forkJoin.shutdown();
+    }
+
+    private static void report(String name, Consumer<Runnable> pool, int submitters) throws InterruptedException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(pool, submitters);
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long nanos = run(pool, submitters);
+            best = Math.min(best, nanos);
+            total += nanos;
+        }
+        System.out.printf("%-28s best %,12.0f tasks/s   mean %,12.0f tasks/s%n", name,
+                TASKS / (best / 1e9), TASKS / (total / (double) MEASURED_ROUNDS / 1e9));
+    }
+
+    /* Submits TASKS short tasks split between the submitting threads and returns the time until all have run */
+    private static long run(Consumer<Runnable> pool, int submitters) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(TASKS);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                long x = System.nanoTime();
+                for (int i = 0; i < 64; i++) { // a few hundred nanoseconds of work
+                    x ^= x << 13;
+                    x ^= x >>> 7;
+                    x ^= x << 17;
+                }
+                sink.addAndGet(x & 1);
+                done.countDown();
+            }
+        };
+        Thread[] submitThreads = new Thread[submitters];
+        long start = System.nanoTime();
+        for (int s = 0; s < submitters; s++) {
+            int count = TASKS / submitters + (s < TASKS % submitters ? 1 : 0);
+            submitThreads[s] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        pool.accept(task);
+                    }
+                }
+            });
+            submitThreads[s].start();
+        }
+        for (Thread submitThread : submitThreads) {
+            submitThread.join();
+        }
+        done.await();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,233 @@
+package tasks;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// @author Jared Scholz
+/* The work-stealing mode of ThreadPool - every worker owns a deque, and idle workers steal from the others */
+class WorkStealingExecutor {
+
+    private volatile StealingThread[] workers; // copy-on-write, replaced only by resize
+    private final Queue<StealingThread> idleWorkers;
+    private final AtomicInteger nextWorker; // round-robin target for external submissions
+    private final AtomicInteger pendingTasks; // submitted but not yet finished
+    private final LongAdder stealCount;
+    private final CountDownLatch terminated; // released once destroyed and every task has finished
+    private volatile boolean destroyed;
+
+    public WorkStealingExecutor(int initialSize) {
+        workers = new StealingThread[0];
+        idleWorkers = new ConcurrentLinkedQueue<>();
+        nextWorker = new AtomicInteger();
+        pendingTasks = new AtomicInteger();
+        stealCount = new LongAdder();
+        terminated = new CountDownLatch(1);
+        destroyed = false;
+        addThreads(initialSize);
+    }
+
+    private void addThreads(int amount) {
+        StealingThread[] oldWorkers = workers;
+        StealingThread[] newWorkers = new StealingThread[oldWorkers.length + amount];
+        System.arraycopy(oldWorkers, 0, newWorkers, 0, oldWorkers.length);
+        for (int i = oldWorkers.length; i < newWorkers.length; i++) {
+            newWorkers[i] = new StealingThread();
+        }
+        workers = newWorkers; // publish before starting so new threads can see each other
+        for (int i = oldWorkers.length; i < newWorkers.length; i++) {
+            newWorkers[i].start();
+        }
+    }
+
+    public int getSize() {
+        return destroyed ? 0 : workers.length;
+    }
+
+    public int getAvailable() {
+        return idleWorkers.size();
+    }
+
+    public int getPendingTasks() {
+        return pendingTasks.get();
+    }
+
+    public long getStealCount() {
+        return stealCount.sum();
+    }
+
+    public boolean perform(Runnable task) { // lock-free, returns immediately
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+        pendingTasks.incrementAndGet(); // before the destroyed check, so termination waits for this task
+        if (destroyed) {
+            taskFinished();
+            throw new IllegalStateException("ThreadPool is destroyed");
+        }
+        push(task);
+        return wakeIdleWorker();
+    }
+
+    private void push(Runnable task) {
+        while (true) {
+            StealingThread target;
+            Thread caller = Thread.currentThread();
+            if (caller instanceof StealingThread && ((StealingThread) caller).owner() == this
+                    && !((StealingThread) caller).retired) {
+                target = (StealingThread) caller; // tasks submitted by a task stay local
+            } else {
+                StealingThread[] current = workers;
+                target = current[Math.floorMod(nextWorker.getAndIncrement(), current.length)];
+            }
+            target.deque.offerLast(task);
+            // a retiring worker drains its deque after marking itself retired, so either it sees this task
+            // or this check sees the mark - in which case take the task back unless the worker already has it
+            if (!target.retired || !target.deque.removeLastOccurrence(task)) {
+                return;
+            }
+        }
+    }
+
+    private boolean wakeIdleWorker() {
+        StealingThread idle = idleWorkers.poll();
+        if (idle == null) {
+            return false; // every worker is busy, one will find the task when it next looks
+        }
+        LockSupport.unpark(idle);
+        return true;
+    }
+
+    public synchronized void resize(int newSize) { // returns immediately
+        if (destroyed) {
+            throw new IllegalStateException("ThreadPool is destroyed");
+        }
+        if (newSize < 1) {
+            throw new IllegalArgumentException("Size must be greater than 0");
+        }
+        StealingThread[] oldWorkers = workers;
+        if (newSize > oldWorkers.length) {
+            addThreads(newSize - oldWorkers.length);
+        } else if (newSize < oldWorkers.length) {
+            StealingThread[] newWorkers = new StealingThread[newSize];
+            System.arraycopy(oldWorkers, 0, newWorkers, 0, newSize);
+            workers = newWorkers; // no new tasks are routed to the removed workers...
+            for (int i = newSize; i < oldWorkers.length; i++) {
+                oldWorkers[i].retire(); // ...and they hand back what they hold once their current task is done
+            }
+        }
+    }
+
+    public synchronized void destroyPool() { // returns immediately
+        if (!destroyed) {
+            destroyed = true; // block any further task additions
+            if (pendingTasks.get() == 0) {
+                terminated.countDown();
+            }
+            wakeAll(); // workers stop once every pending task has finished
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private void taskFinished() {
+        if (pendingTasks.decrementAndGet() == 0 && destroyed) {
+            terminated.countDown();
+            wakeAll();
+        }
+    }
+
+    private void wakeAll() {
+        for (StealingThread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /* A StealingThread runs tasks from its own deque first, then from the other workers' deques */
+    private class StealingThread extends Thread {
+
+        private final ConcurrentLinkedDeque<Runnable> deque;
+        private volatile boolean retired;
+
+        public StealingThread() {
+            super();
+            deque = new ConcurrentLinkedDeque<>();
+            retired = false;
+        }
+
+        private WorkStealingExecutor owner() {
+            return WorkStealingExecutor.this;
+        }
+
+        public void retire() {
+            retired = true;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            while (!retired) {
+                Runnable task = findTask();
+                if (task != null) {
+                    runTask(task);
+                } else if (destroyed && pendingTasks.get() == 0) {
+                    return; // nothing left anywhere - stop
+                } else {
+                    idleWorkers.add(this);
+                    task = findTask(); // look again, a submitter may have missed this thread becoming idle
+                    if (task != null) {
+                        idleWorkers.remove(this);
+                        runTask(task);
+                    } else if (!destroyed || pendingTasks.get() > 0) {
+                        LockSupport.park(this); // wait to be reused
+                        idleWorkers.remove(this); // (already removed if a submitter woke this thread)
+                    } else {
+                        idleWorkers.remove(this);
+                    }
+                }
+            }
+            // retired - pass any remaining tasks on to the workers that are left:
+            Runnable task;
+            while ((task = deque.pollFirst()) != null) {
+                push(task);
+                wakeIdleWorker();
+            }
+            idleWorkers.remove(this);
+            wakeIdleWorker(); // pass on any wake-up meant for this thread
+        }
+
+        private Runnable findTask() {
+            Runnable task = deque.pollFirst();
+            if (task != null) {
+                return task;
+            }
+            StealingThread[] current = workers;
+            int start = ThreadLocalRandom.current().nextInt(current.length); // spread thieves across victims
+            for (int i = 0; i < current.length; i++) {
+                StealingThread victim = current[(start + i) % current.length];
+                if (victim != this && (task = victim.deque.pollLast()) != null) {
+                    stealCount.increment();
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        private void runTask(Runnable task) {
+            try {
+                task.run();
+            } finally {
+                setPriority(Thread.NORM_PRIORITY); // reset any changes made in task
+                taskFinished();
+            }
+        }
+    }
+}
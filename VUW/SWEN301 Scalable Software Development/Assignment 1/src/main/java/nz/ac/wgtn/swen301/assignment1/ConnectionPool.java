@@ -0,0 +1,173 @@
+package nz.ac.wgtn.swen301.assignment1;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small JDBC connection pool. Idle connections are kept open and handed out again instead of opening a new
+ * connection per call, and each connection keeps its own cache of prepared statements so that SQL is only
+ * compiled once per connection. Borrowers must not close the statements they get from a connection.
+ *
+ * @author jared scholz
+ */
+class ConnectionPool {
+
+    private final String url;
+    private final int maxConnections;
+    private final int maxStatements;
+    private final BlockingQueue<PooledConnection> idle;
+    // One permit per connection that may be borrowed; held from borrow until the connection is returned or discarded
+    private final Semaphore permits;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong statementLookups = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+
+    ConnectionPool(String url, int maxConnections, int maxStatements) {
+        if (maxConnections <= 0 || maxStatements <= 0) {
+            throw new IllegalArgumentException("maxConnections and maxStatements must be positive");
+        }
+        this.url = url;
+        this.maxConnections = maxConnections;
+        this.maxStatements = maxStatements;
+        this.idle = new LinkedBlockingQueue<>(maxConnections);
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Return an idle connection, opening a new one if none is idle, once fewer than maxConnections are borrowed.
+     * A caller that has to wait is woken by a returned connection or by a discarded one, which it replaces.
+     */
+    PooledConnection borrow() throws SQLException {
+        borrows.incrementAndGet();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        // Released connections are made idle before their permit is, so holding a permit means one is idle or may be opened
+        PooledConnection connection = idle.poll();
+        if (connection != null) {
+            poolHits.incrementAndGet();
+            return connection;
+        }
+        openConnections.incrementAndGet();
+        try {
+            return new PooledConnection(DriverManager.getConnection(url));
+        } catch (SQLException e) {
+            openConnections.decrementAndGet();
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * The fraction of borrows that were served by an already open connection.
+     */
+    double getHitRate() {
+        long total = borrows.get();
+        return total == 0 ? 0 : (double) poolHits.get() / total;
+    }
+
+    /**
+     * The fraction of statement lookups that found an already prepared statement.
+     */
+    double getStatementCacheHitRate() {
+        long total = statementLookups.get();
+        return total == 0 ? 0 : (double) statementHits.get() / total;
+    }
+
+    int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    private void release(PooledConnection connection) {
+        boolean reusable;
+        try {
+            reusable = !connection.connection.isClosed() && connection.connection.getAutoCommit();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        if (!reusable || !idle.offer(connection)) {
+            connection.discard();
+        }
+        permits.release();
+    }
+
+    /**
+     * A connection borrowed from the pool. Closing it returns it to the pool rather than closing it.
+     */
+    class PooledConnection implements AutoCloseable {
+
+        private final Connection connection;
+        // Access-ordered, so the least recently used statement is closed when the cache is full
+        private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Return the cached statement for this SQL, preparing it on first use. Parameters are cleared before
+         * it is returned. Only the thread that borrowed this connection may use it, so no locking is needed.
+         */
+        PreparedStatement prepare(String sql) throws SQLException {
+            statementLookups.incrementAndGet();
+            PreparedStatement statement = statements.get(sql);
+            if (statement != null) {
+                statementHits.incrementAndGet();
+                statement.clearParameters();
+                return statement;
+            }
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+            if (statements.size() > maxStatements) {
+                PreparedStatement eldest = statements.values().iterator().next();
+                statements.values().remove(eldest);
+                eldest.close();
+            }
+            return statement;
+        }
+
+        /**
+         * Connections are returned to the pool in auto-commit mode, so a borrower that turns it off must turn it
+         * back on before closing; otherwise the connection is discarded rather than reused.
+         */
+        void setAutoCommit(boolean autoCommit) throws SQLException {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        void commit() throws SQLException {
+            connection.commit();
+        }
+
+        void rollback() throws SQLException {
+            connection.rollback();
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+        private void discard() {
+            openConnections.decrementAndGet();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Already unusable, nothing more to clean up
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package nz.ac.wgtn.swen301.assignment1;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import nz.ac.wgtn.swen301.studentdb.NoSuchRecordException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A thread-safe identity map from ids to the single instance for each id.
+ * Instances are held weakly, so an instance stays in the map exactly as long as something else still uses it,
+ * and the map never hands out a second instance for an id whose first instance is still reachable.
+ * The most recently used maxSize instances are also held strongly, so that they survive garbage collection
+ * between uses; beyond that the least recently used ones are evicted and left to the garbage collector.
+ *
+ * @author jared scholz
+ */
+class IdentityCache<V> {
+
+    private final Cache<String, V> instances;
+    private final Cache<String, V> recent;
+
+    IdentityCache(long maxSize) {
+        instances = CacheBuilder.newBuilder().weakValues().recordStats().build();
+        recent = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    }
+
+    /**
+     * Return the instance for the id, or null if there is none.
+     */
+    V getIfPresent(String id) {
+        V value = instances.getIfPresent(id);
+        if (value != null) {
+            touch(id, value);
+        }
+        return value;
+    }
+
+    /**
+     * Return the instance for the id, calling the loader to create it if there is none.
+     * Concurrent calls for the same id wait for a single load rather than each running the loader.
+     */
+    V get(String id, Callable<? extends V> loader) throws NoSuchRecordException {
+        V value;
+        try {
+            value = instances.get(id, loader);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NoSuchRecordException) {
+                throw (NoSuchRecordException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } catch (ExecutionError e) {
+            throw (Error) e.getCause();
+        }
+        touch(id, value);
+        return value;
+    }
+
+    /**
+     * Return the existing instance for the id if there is one, otherwise make this value the instance.
+     */
+    V intern(String id, V value) {
+        V existing = instances.asMap().putIfAbsent(id, value);
+        V result = existing == null ? value : existing;
+        touch(id, result);
+        return result;
+    }
+
+    void remove(String id) {
+        instances.invalidate(id);
+        recent.invalidate(id);
+    }
+
+    void clear() {
+        instances.invalidateAll();
+        recent.invalidateAll();
+    }
+
+    /**
+     * Hits and misses count lookups by id; the eviction count is the number of instances dropped
+     * from the strongly held most recently used ones.
+     */
+    CacheStats stats() {
+        CacheStats lookups = instances.stats();
+        return new CacheStats(lookups.hitCount(), lookups.missCount(), lookups.loadSuccessCount(),
+                lookups.loadExceptionCount(), lookups.totalLoadTime(), recent.stats().evictionCount());
+    }
+
+    private void touch(String id, V value) {
+        if (recent.getIfPresent(id) != value) {
+            recent.put(id, value);
+        }
+    }
+}
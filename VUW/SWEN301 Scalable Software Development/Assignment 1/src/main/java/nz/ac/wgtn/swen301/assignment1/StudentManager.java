@@ -1,12 +1,19 @@
 package nz.ac.wgtn.swen301.assignment1;
 
+import com.google.common.cache.CacheStats;
 import nz.ac.wgtn.swen301.studentdb.*;
 
-import java.sql.*;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * A student manager providing basic CRUD operations for instances of Student, and a read operation for instances of Degree.
@@ -23,8 +30,25 @@ public class StudentManager {
     // DO NOT REMOVE BLOCK ENDS HERE
 
     private static final String JDBC_URL = "jdbc:derby:memory:studentdb";
-    private static final Map<String, Student> studentCache = new HashMap<>();
-    private static final Map<String, Degree> degreeCache = new HashMap<>();
+    private static final int MAX_CONNECTIONS = 8;
+    private static final int MAX_STATEMENTS_PER_CONNECTION = 16;
+    private static final String FETCH_STUDENT_SQL = "SELECT s.id, s.first_name, s.name, s.degree, d.name AS degree_name FROM STUDENTS s JOIN DEGREES d ON s.degree = d.id WHERE s.id = ?";
+    private static final String FETCH_ALL_STUDENTS_SQL = "SELECT s.id, s.first_name, s.name, s.degree, d.name AS degree_name FROM STUDENTS s JOIN DEGREES d ON s.degree = d.id";
+    private static final int FETCH_BATCH_SIZE = 64;
+    private static final String FETCH_STUDENTS_SQL = FETCH_ALL_STUDENTS_SQL + " WHERE s.id IN (" + String.join(", ", Collections.nCopies(FETCH_BATCH_SIZE, "?")) + ")";
+    private static final String FETCH_DEGREE_SQL = "SELECT d.id, d.name FROM DEGREES d WHERE d.id = ?";
+    private static final String DELETE_STUDENT_SQL = "DELETE FROM STUDENTS WHERE id = ?";
+    private static final String UPDATE_STUDENT_SQL = "UPDATE STUDENTS SET first_name = ?, name = ?, degree = ? WHERE id = ?";
+    private static final String MAX_ID_SQL = "SELECT MAX(CAST(SUBSTR(id, 3) AS INT)) AS max_id FROM STUDENTS";
+    private static final String INSERT_STUDENT_SQL = "INSERT INTO STUDENTS (id, first_name, name, degree) VALUES (?, ?, ?, ?)";
+    private static final String FETCH_ALL_IDS_SQL = "SELECT id FROM STUDENTS";
+    private static final ConnectionPool connectionPool = new ConnectionPool(JDBC_URL, MAX_CONNECTIONS, MAX_STATEMENTS_PER_CONNECTION);
+    private static final int STUDENT_CACHE_SIZE = 1024;
+    private static final int DEGREE_CACHE_SIZE = 64;
+    private static final IdentityCache<Student> studentCache = new IdentityCache<>(STUDENT_CACHE_SIZE);
+    private static final IdentityCache<Degree> degreeCache = new IdentityCache<>(DEGREE_CACHE_SIZE);
+    // The next unused student id number, or -1 until it has been read from the database
+    private static final AtomicLong nextStudentId = new AtomicLong(-1);
 
     /**
      * Package-private utility method used in test fixtures to clear memory resources such as caches between tests.
@@ -32,6 +56,43 @@ public class StudentManager {
     static void reset() {
         studentCache.clear();
         degreeCache.clear();
+        nextStudentId.set(-1);
+    }
+
+    /**
+     * Return hit, miss and eviction statistics for the student identity cache.
+     *
+     * @return A snapshot of the statistics since the class was loaded.
+     */
+    public static CacheStats getStudentCacheStats() {
+        return studentCache.stats();
+    }
+
+    /**
+     * Return hit, miss and eviction statistics for the degree identity cache.
+     *
+     * @return A snapshot of the statistics since the class was loaded.
+     */
+    public static CacheStats getDegreeCacheStats() {
+        return degreeCache.stats();
+    }
+
+    /**
+     * Return the fraction of database calls that reused an open pooled connection instead of opening a new one.
+     *
+     * @return A hit rate between 0 and 1.
+     */
+    public static double getConnectionPoolHitRate() {
+        return connectionPool.getHitRate();
+    }
+
+    /**
+     * Return the fraction of statement lookups that reused a statement already prepared on the pooled connection.
+     *
+     * @return A hit rate between 0 and 1.
+     */
+    public static double getStatementCacheHitRate() {
+        return connectionPool.getStatementCacheHitRate();
     }
 
     // THE FOLLOWING METHODS MUST BE IMPLEMENTED :
@@ -46,32 +107,16 @@ public class StudentManager {
      * @throws NoSuchRecordException if no record with such an id exists in the database.
      */
     public static Student fetchStudent(String id) throws NoSuchRecordException {
-        Student existingStudent = studentCache.get(id);
-        if (existingStudent != null) {
-            return existingStudent;
-        }
+        return studentCache.get(id, () -> loadStudent(id));
+    }
 
-        String query = "SELECT s.id, s.first_name, s.name, s.degree, d.name AS degree_name FROM STUDENTS s JOIN DEGREES d ON s.degree = d.id WHERE s.id = ?";
-        try (Connection connection = DriverManager.getConnection(JDBC_URL);
-             PreparedStatement statement = connection.prepareStatement(query)) {
+    private static Student loadStudent(String id) throws NoSuchRecordException {
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow()) {
+            PreparedStatement statement = connection.prepare(FETCH_STUDENT_SQL);
             statement.setString(1, id);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
-                    String studentId = resultSet.getString("id");
-                    String firstName = resultSet.getString("first_name");
-                    String name = resultSet.getString("name");
-                    String degreeId = resultSet.getString("degree");
-                    String degreeName = resultSet.getString("degree_name");
-
-                    Degree degree = degreeCache.get(degreeId);
-                    if (degree == null) {
-                        degree = new Degree(degreeId, degreeName);
-                        degreeCache.put(degreeId, degree);
-                    }
-
-                    Student student = new Student(studentId, name, firstName, degree);
-                    studentCache.put(studentId, student);
-                    return student;
+                    return readStudent(resultSet);
                 }
             }
         } catch (SQLException e) {
@@ -80,6 +125,102 @@ public class StudentManager {
         throw new NoSuchRecordException("No student found with id " + id);
     }
 
+    /**
+     * Return student instances for all rows in the STUDENTS table, read with a single joined query.
+     * Existing instances are reused, as in fetchStudent.
+     *
+     * @return A Collection of all students.
+     */
+    public static Collection<Student> fetchAllStudents() {
+        Collection<Student> students = new ArrayList<>();
+        fetchAllStudents(students::add);
+        return students;
+    }
+
+    /**
+     * Pass each student in the STUDENTS table to the action as its row is read, without collecting them first.
+     * Only a single joined query is run, so this is suitable for a single pass over a large table.
+     *
+     * @param action Called once for each student, in the order the database returns them.
+     */
+    public static void fetchAllStudents(Consumer<? super Student> action) {
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow();
+             ResultSet resultSet = connection.prepare(FETCH_ALL_STUDENTS_SQL).executeQuery()) {
+            while (resultSet.next()) {
+                action.accept(toStudent(resultSet));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error fetching students", e);
+        }
+    }
+
+    /**
+     * Return student instances for the given ids. Ids without an existing instance are loaded in batches of
+     * joined queries rather than one query per id.
+     *
+     * @param ids The ids of the students to fetch.
+     * @return The students, in the order of the given ids with duplicates removed.
+     * @throws NoSuchRecordException if no record exists for one of the ids.
+     */
+    public static Collection<Student> fetchStudents(Collection<String> ids) throws NoSuchRecordException {
+        Map<String, Student> students = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            Student existingStudent = studentCache.getIfPresent(id);
+            students.put(id, existingStudent);
+            if (existingStudent == null) {
+                missing.add(id);
+            }
+        }
+
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow()) {
+            PreparedStatement statement = connection.prepare(FETCH_STUDENTS_SQL);
+            for (int from = 0; from < missing.size(); from += FETCH_BATCH_SIZE) {
+                // Every batch uses all parameters so the one prepared statement can be reused; short batches repeat an id
+                for (int i = 0; i < FETCH_BATCH_SIZE; i++) {
+                    statement.setString(i + 1, missing.get(Math.min(from + i, missing.size() - 1)));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Student student = toStudent(resultSet);
+                        students.put(student.getId(), student);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error fetching students", e);
+        }
+
+        for (Map.Entry<String, Student> entry : students.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new NoSuchRecordException("No student found with id " + entry.getKey());
+            }
+        }
+        return new ArrayList<>(students.values());
+    }
+
+    /**
+     * Return the instance for the student in the current row of a joined query, creating it if needed.
+     */
+    private static Student toStudent(ResultSet resultSet) throws SQLException {
+        Student student = readStudent(resultSet);
+        return studentCache.intern(student.getId(), student);
+    }
+
+    /**
+     * Create a student from the current row of a joined query, reusing the instance for its degree.
+     */
+    private static Student readStudent(ResultSet resultSet) throws SQLException {
+        String studentId = resultSet.getString("id");
+        String firstName = resultSet.getString("first_name");
+        String name = resultSet.getString("name");
+        String degreeId = resultSet.getString("degree");
+        String degreeName = resultSet.getString("degree_name");
+
+        Degree degree = degreeCache.intern(degreeId, new Degree(degreeId, degreeName));
+        return new Student(studentId, name, firstName, degree);
+    }
+
     /**
      * Return a degree instance with values from the row with the respective id in the database.
      * If an instance with this id already exists, return the existing instance and do not create a second one.
@@ -90,23 +231,19 @@ public class StudentManager {
      * @throws NoSuchRecordException if no record with such an id exists in the database.
      */
     public static Degree fetchDegree(String id) throws NoSuchRecordException {
-        Degree existingDegree = degreeCache.get(id);
-        if (existingDegree != null) {
-            return existingDegree;
-        }
+        return degreeCache.get(id, () -> loadDegree(id));
+    }
 
-        String query = "SELECT d.id, d.name FROM DEGREES d WHERE d.id = ?";
-        try (Connection connection = DriverManager.getConnection(JDBC_URL);
-             PreparedStatement statement = connection.prepareStatement(query)) {
+    private static Degree loadDegree(String id) throws NoSuchRecordException {
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow()) {
+            PreparedStatement statement = connection.prepare(FETCH_DEGREE_SQL);
             statement.setString(1, id);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
                     String degreeId = resultSet.getString("id");
                     String degreeName = resultSet.getString("name");
 
-                    Degree degree = new Degree(degreeId, degreeName);
-                    degreeCache.put(degreeId, degree);
-                    return degree;
+                    return new Degree(degreeId, degreeName);
                 }
             }
         } catch (SQLException e) {
@@ -124,9 +261,8 @@ public class StudentManager {
      * @throws NoSuchRecordException if no record corresponding to this student instance exists in the database.
      */
     public static void remove(Student student) throws NoSuchRecordException {
-        String query = "DELETE FROM STUDENTS WHERE id = ?";
-        try (Connection connection = DriverManager.getConnection(JDBC_URL);
-             PreparedStatement statement = connection.prepareStatement(query)) {
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow()) {
+            PreparedStatement statement = connection.prepare(DELETE_STUDENT_SQL);
             statement.setString(1, student.getId());
             if (statement.executeUpdate() == 0) {
                 throw new NoSuchRecordException("No student found with id " + student.getId());
@@ -149,9 +285,8 @@ public class StudentManager {
      * @throws NoSuchRecordException if no record corresponding to this student instance exists in the database.
      */
     public static void update(Student student) throws NoSuchRecordException {
-        String query = "UPDATE STUDENTS SET first_name = ?, name = ?, degree = ? WHERE id = ?";
-        try (Connection connection = DriverManager.getConnection(JDBC_URL);
-             PreparedStatement statement = connection.prepareStatement(query)) {
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow()) {
+            PreparedStatement statement = connection.prepare(UPDATE_STUDENT_SQL);
             statement.setString(1, student.getFirstName());
             statement.setString(2, student.getName());
             statement.setString(3, student.getDegree().getId());
@@ -177,36 +312,92 @@ public class StudentManager {
      * @return A freshly created student instance.
      */
     public static Student newStudent(String name, String firstName, Degree degree) {
-        // Find the maximum student ID and increment by one:
-        String maxIdQuery = "SELECT MAX(CAST(SUBSTR(id, 3) AS INT)) AS max_id FROM STUDENTS";
-        int newIdValue = 0;
-        try (Connection connection = DriverManager.getConnection(JDBC_URL);
-             PreparedStatement statement = connection.prepareStatement(maxIdQuery);
-             ResultSet resultSet = statement.executeQuery()) {
-            if (resultSet.next()) {
-                newIdValue = resultSet.getInt("max_id") + 1;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException("Error fetching max student id", e);
-        }
-        String newId = "id" + newIdValue;
+        String newId = "id" + allocateStudentIds(1);
 
-        String insertQuery = "INSERT INTO STUDENTS (id, first_name, name, degree) VALUES (?, ?, ?, ?)";
-        try (Connection connection = DriverManager.getConnection(JDBC_URL);
-             PreparedStatement statement = connection.prepareStatement(insertQuery)) {
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow()) {
+            PreparedStatement statement = connection.prepare(INSERT_STUDENT_SQL);
             statement.setString(1, newId);
             statement.setString(2, firstName);
             statement.setString(3, name);
             statement.setString(4, degree.getId());
             statement.executeUpdate();
-            Student student = new Student(newId, name, firstName, degree);
-            studentCache.put(newId, student);
-            return student;
+            return studentCache.intern(newId, new Student(newId, name, firstName, degree));
         } catch (SQLException e) {
             throw new RuntimeException("Error creating new student", e);
         }
     }
 
+    /**
+     * Create new students with the values provided, and save them to the database with a single batch of inserts.
+     * Each student gets a new id as in newStudent. Either all of the students are saved or, if the batch fails, none are.
+     *
+     * @param details The values for each new student.
+     * @return The freshly created student instances, in the same order as the details.
+     */
+    public static List<Student> newStudents(Collection<StudentDetails> details) {
+        long firstIdValue = allocateStudentIds(details.size());
+        List<Student> students = new ArrayList<>(details.size());
+        for (StudentDetails detail : details) {
+            String newId = "id" + (firstIdValue + students.size());
+            students.add(new Student(newId, detail.getName(), detail.getFirstName(), detail.getDegree()));
+        }
+        if (students.isEmpty()) {
+            return students;
+        }
+
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow()) {
+            PreparedStatement statement = connection.prepare(INSERT_STUDENT_SQL);
+            connection.setAutoCommit(false);
+            try {
+                for (Student student : students) {
+                    statement.setString(1, student.getId());
+                    statement.setString(2, student.getFirstName());
+                    statement.setString(3, student.getName());
+                    statement.setString(4, student.getDegree().getId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                statement.clearBatch();
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error creating new students", e);
+        }
+        students.replaceAll(student -> studentCache.intern(student.getId(), student));
+        return students;
+    }
+
+    /**
+     * Reserve count consecutive student id numbers and return the first.
+     * The largest id in the database is only read once, by the first caller; after that ids come from a counter,
+     * so concurrent callers never get the same id. This assumes no other process inserts students meanwhile.
+     */
+    private static long allocateStudentIds(int count) {
+        if (nextStudentId.get() < 0) {
+            synchronized (nextStudentId) {
+                if (nextStudentId.get() < 0) {
+                    nextStudentId.set(fetchMaxStudentId() + 1);
+                }
+            }
+        }
+        return nextStudentId.getAndAdd(count);
+    }
+
+    private static long fetchMaxStudentId() {
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow();
+             ResultSet resultSet = connection.prepare(MAX_ID_SQL).executeQuery()) {
+            // MAX is null for an empty table, which getLong reads as 0
+            return resultSet.next() ? resultSet.getLong("max_id") : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error fetching max student id", e);
+        }
+    }
+
     /**
      * Get all student ids currently being used in the database.
      * This functionality is to be tested in nz.ac.wgtn.swen301.assignment1.TestStudentManager::testFetchAllStudentIds (followed by optional numbers if multiple tests are used).
@@ -215,10 +406,8 @@ public class StudentManager {
      */
     public static Collection<String> fetchAllStudentIds() {
         Collection<String> ids = new ArrayList<>();
-        String query = "SELECT id FROM STUDENTS";
-        try (Connection connection = DriverManager.getConnection(JDBC_URL);
-             PreparedStatement statement = connection.prepareStatement(query);
-             ResultSet resultSet = statement.executeQuery()) {
+        try (ConnectionPool.PooledConnection connection = connectionPool.borrow();
+             ResultSet resultSet = connection.prepare(FETCH_ALL_IDS_SQL).executeQuery()) {
             while (resultSet.next()) {
                 ids.add(resultSet.getString("id"));
             }
@@ -227,4 +416,36 @@ public class StudentManager {
         }
         return ids;
     }
+
+    /**
+     * The values for a student that has not been created yet, as passed to newStudents.
+     */
+    public static class StudentDetails {
+        private final String name;
+        private final String firstName;
+        private final Degree degree;
+
+        /**
+         * @param name      The last name of the new student.
+         * @param firstName The first name of the new student.
+         * @param degree    The Degree of the new student.
+         */
+        public StudentDetails(String name, String firstName, Degree degree) {
+            this.name = name;
+            this.firstName = firstName;
+            this.degree = degree;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public Degree getDegree() {
+            return degree;
+        }
+    }
 }
@@ -6,7 +6,6 @@ import nz.ac.wgtn.swen301.studentdb.NoSuchRecordException;
 import org.apache.commons.cli.*;
 
 import java.io.*;
-import java.util.Collection;
 
 public class StudentManagerUI {
 
@@ -41,11 +40,8 @@ public class StudentManagerUI {
                 Student student = StudentManager.fetchStudent(id);
                 System.out.println(student.getId() + ", " + student.getFirstName() + ", " + student.getName());
             } else if (cmd.hasOption("fetchall")) {
-                Collection<String> allIds = StudentManager.fetchAllStudentIds();
-                for (String id : allIds) {
-                    Student student = StudentManager.fetchStudent(id);
-                    System.out.print("(" + student.getId() + ", " + student.getFirstName() + ", " + student.getName() + "), ");
-                }
+                StudentManager.fetchAllStudents(student ->
+                        System.out.print("(" + student.getId() + ", " + student.getFirstName() + ", " + student.getName() + "), "));
                 System.out.println();
             } else if (cmd.hasOption("export")) {
                 if (!cmd.hasOption("f")) {
@@ -56,11 +52,9 @@ public class StudentManagerUI {
                 // Write CSV file assuming no student properties contain commas, newlines, or double quotes
                 try (PrintWriter writer = new PrintWriter(fileName)) {
                     writer.println("id,first_name,name,degree");
-                    Collection<String> allIds = StudentManager.fetchAllStudentIds();
-                    for (String id : allIds) {
-                        Student student = StudentManager.fetchStudent(id);
-                        writer.println(student.getId() + "," + student.getFirstName() + "," + student.getName() + "," + student.getDegree().getId());
-                    }
+                    // One pass over a single joined query, rather than a query per student
+                    StudentManager.fetchAllStudents(student ->
+                            writer.println(student.getId() + "," + student.getFirstName() + "," + student.getName() + "," + student.getDegree().getId()));
                 } catch (FileNotFoundException e) {
                     System.err.println("File not found: " + e.getMessage());
                 }
@@ -9,14 +9,23 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -151,6 +160,61 @@ public class TestStudentManager {
         assertNotEquals(student1.getId(), student2.getId());
     }
 
+    @Test
+    public void testNewStudent3() throws Exception {
+        // Concurrent inserts must never be given the same id
+        Degree degree = StudentManager.fetchDegree("deg1");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Student>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                futures.add(executor.submit(() -> StudentManager.newStudent("Doe", "Jane", degree)));
+            }
+            Set<String> ids = new HashSet<>();
+            for (Future<Student> future : futures) {
+                assertTrue(ids.add(future.get().getId()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(10040, StudentManager.fetchAllStudentIds().size());
+    }
+
+    @Test
+    public void testNewStudents1() throws Exception {
+        Degree degree = StudentManager.fetchDegree("deg2");
+        List<StudentManager.StudentDetails> details = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            details.add(new StudentManager.StudentDetails("Name" + i, "First" + i, degree));
+        }
+        List<Student> students = StudentManager.newStudents(details);
+        assertEquals(100, students.size());
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            Student student = students.get(i);
+            assertEquals("Name" + i, student.getName());
+            assertEquals("First" + i, student.getFirstName());
+            assertTrue(ids.add(student.getId()));
+            assertSame(student, StudentManager.fetchStudent(student.getId()));
+        }
+        assertEquals(10100, StudentManager.fetchAllStudentIds().size());
+        // Ids keep increasing after a batch
+        Student next = StudentManager.newStudent("Doe", "John", degree);
+        assertTrue(ids.add(next.getId()));
+    }
+
+    @Test
+    public void testNewStudents2() throws Exception {
+        // A batch with an invalid row is rolled back as a whole
+        Degree degree = StudentManager.fetchDegree("deg2");
+        List<StudentManager.StudentDetails> details = List.of(
+                new StudentManager.StudentDetails("Valid", "Row", degree),
+                new StudentManager.StudentDetails("Invalid", "Row", new Degree("deg999", "NonExistent")));
+        assertThrows(RuntimeException.class, () -> StudentManager.newStudents(details));
+        assertEquals(10000, StudentManager.fetchAllStudentIds().size());
+        assertTrue(StudentManager.newStudents(List.of()).isEmpty());
+    }
+
     @Test
     public void testFetchAllStudentIds() {
         int expectedNumIds = 10000;
@@ -161,6 +225,130 @@ public class TestStudentManager {
         }
     }
 
+    @Test
+    public void testFetchAllStudents() throws Exception {
+        Student cached = StudentManager.fetchStudent("id5");
+        Collection<Student> students = StudentManager.fetchAllStudents();
+        assertEquals(10000, students.size());
+        // Instances already fetched are reused, and the rest are now cached
+        assertTrue(students.stream().anyMatch(student -> student == cached));
+        for (Student student : students) {
+            assertSame(student, StudentManager.fetchStudent(student.getId()));
+        }
+    }
+
+    @Test
+    public void testFetchStudents1() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            ids.add("id" + (i * 7));
+        }
+        ids.add("id0");
+        Student cached = StudentManager.fetchStudent("id14");
+        List<Student> students = new ArrayList<>(StudentManager.fetchStudents(ids));
+        // Duplicates are dropped and the order of the ids is kept across batches
+        assertEquals(150, students.size());
+        for (int i = 0; i < 150; i++) {
+            assertEquals("id" + (i * 7), students.get(i).getId());
+        }
+        assertSame(cached, students.get(2));
+        assertSame(students.get(100), StudentManager.fetchStudent("id700"));
+        assertEquals("James", students.get(0).getFirstName());
+        assertEquals("deg0", students.get(0).getDegree().getId());
+    }
+
+    @Test
+    public void testFetchStudents2() {
+        // Testing a collection containing a non-existent student ID
+        assertThrows(NoSuchRecordException.class, () -> StudentManager.fetchStudents(List.of("id1", "id10000")));
+    }
+
+    @Test
+    public void testCacheConcurrentFetch() throws Exception {
+        int numThreads = 8;
+        long loadsBefore = StudentManager.getStudentCacheStats().loadCount();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Student>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return StudentManager.fetchStudent("id77");
+                }));
+            }
+            start.countDown();
+            Student first = futures.get(0).get();
+            for (Future<Student> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // All threads share a single load from the database
+        assertEquals(loadsBefore + 1, StudentManager.getStudentCacheStats().loadCount());
+    }
+
+    @Test
+    public void testCacheEviction() throws Exception {
+        long evictionsBefore = StudentManager.getStudentCacheStats().evictionCount();
+        List<Student> held = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            held.add(StudentManager.fetchStudent("id" + i));
+        }
+        assertTrue(StudentManager.getStudentCacheStats().evictionCount() > evictionsBefore);
+        // Evicted instances that are still referenced are returned again rather than duplicated
+        for (int i = 0; i < 2000; i++) {
+            assertSame(held.get(i), StudentManager.fetchStudent("id" + i));
+        }
+        long hitsBefore = StudentManager.getStudentCacheStats().hitCount();
+        StudentManager.fetchStudent("id1999");
+        assertEquals(hitsBefore + 1, StudentManager.getStudentCacheStats().hitCount());
+    }
+
+    @Test
+    public void testConnectionPool() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            StudentManager.fetchDegree("deg" + (i % 10));
+            StudentManager.fetchStudent("id" + (i + 100));
+        }
+        // Repeated calls on one thread reuse the same connection and its prepared statements
+        assertTrue(StudentManager.getConnectionPoolHitRate() > 0.9);
+        assertTrue(StudentManager.getStatementCacheHitRate() > 0.9);
+    }
+
+    @Test
+    public void testConnectionPoolAfterReset() throws Exception {
+        // Pooled statements must keep working after the tables are dropped and recreated
+        StudentManager.fetchStudent("id7");
+        StudentDB.init();
+        StudentManager.reset();
+        assertEquals("id7", StudentManager.fetchStudent("id7").getId());
+        assertEquals(10000, StudentManager.fetchAllStudentIds().size());
+    }
+
+    @Test
+    public void testConnectionPoolReplacesDiscardedConnection() throws Exception {
+        // A caller waiting at the cap must not hang when the connection it waits on is discarded instead of returned
+        ConnectionPool pool = new ConnectionPool("jdbc:derby:memory:studentdb", 1, 4);
+        ConnectionPool.PooledConnection first = pool.borrow();
+        first.setAutoCommit(false);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ConnectionPool.PooledConnection> waiting = executor.submit(pool::borrow);
+            Thread.sleep(100);
+            assertFalse(waiting.isDone());
+            first.rollback();
+            first.close();
+            ConnectionPool.PooledConnection second = waiting.get(10, TimeUnit.SECONDS);
+            assertNotSame(first, second);
+            assertEquals(1, pool.getOpenConnections());
+            second.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testPerformance() throws NoSuchRecordException {
         int numQueries = 10000;
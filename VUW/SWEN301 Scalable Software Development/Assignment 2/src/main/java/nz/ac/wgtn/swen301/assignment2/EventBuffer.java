@@ -0,0 +1,70 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bounded store behind MemAppender that keeps the most recent {@code maxSize} elements.
+ */
+public interface EventBuffer<E> extends Iterable<E> {
+
+    /**
+     * Appends the element, returning the sequence number it was assigned.
+     */
+    long add(E element);
+
+    /**
+     * Returns the element with the sequence number, or null if it has been evicted or is not yet published.
+     */
+    E get(long sequence);
+
+    /**
+     * Returns an element that has been evicted but whose slot has not been reused yet, or null.
+     */
+    E getEvicted(long sequence);
+
+    /**
+     * Sequence number of the oldest retained element.
+     */
+    long getFirstSequence();
+
+    /**
+     * Sequence number the next element will be assigned.
+     */
+    long getNextSequence();
+
+    long getMaxSize();
+
+    void setMaxSize(long maxSize);
+
+    long getHeadroom();
+
+    /**
+     * Reserves slots beyond {@code maxSize} so that evicted elements stay readable through
+     * {@link #getEvicted(long)} until that many newer elements have been added.
+     */
+    void setHeadroom(long headroom);
+
+    /**
+     * Number of elements evicted since construction or the last {@link #clear()}.
+     */
+    long getDiscardedCount();
+
+    long size();
+
+    /**
+     * Copies the retained elements, oldest first, into an unmodifiable list.
+     */
+    List<E> snapshot();
+
+    /**
+     * Iterates over the retained elements, oldest first. Implementations that copy elements out of their storage
+     * do so one at a time rather than copying the whole window; elements overwritten before they are reached are left out.
+     */
+    @Override
+    default Iterator<E> iterator() {
+        return snapshot().iterator();
+    }
+
+    void clear();
+}
@@ -0,0 +1,10 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+/**
+ * Receives progress updates while MemAppender exports its logs.
+ */
+@FunctionalInterface
+public interface ExportListener {
+
+    void exported(long count, long total);
+}
@@ -0,0 +1,46 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps values to small, stable integer ids. Lookups of known values and of ids never lock.
+ */
+final class InternTable<T> {
+
+    private final ConcurrentHashMap<T, Integer> ids = new ConcurrentHashMap<>();
+    private volatile Object[] values = new Object[16];
+    private int size;
+
+    int intern(T value) {
+        Integer id = ids.get(value);
+        return id != null ? id : add(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int id) {
+        return (T) values[id];
+    }
+
+    /**
+     * Number of ids handed out; ids below this can be passed to {@link #get(int)}.
+     */
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int add(T value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        Object[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = value;
+        values = current;
+        ids.put(value, size);
+        return size++;
+    }
+}
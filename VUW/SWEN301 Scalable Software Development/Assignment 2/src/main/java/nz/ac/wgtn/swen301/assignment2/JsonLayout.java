@@ -1,28 +1,131 @@
 package nz.ac.wgtn.swen301.assignment2;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import org.apache.log4j.Layout;
 import org.apache.log4j.spi.LoggingEvent;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 
+/**
+ * Formats events as JSON objects by appending directly to a reused per-thread StringBuilder,
+ * with the date and time part of the timestamp cached per second.
+ */
 public class JsonLayout extends Layout {
 
-    private static final Gson gson = new Gson();
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ISO_INSTANT.withZone(ZoneId.of("Z"));
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final ThreadLocal<TimestampCache> timestamps = ThreadLocal.withInitial(TimestampCache::new);
 
     @Override
     public String format(LoggingEvent event) {
-        JsonObject json = new JsonObject();
-        json.addProperty("name", event.getLoggerName());
-        json.addProperty("level", event.getLevel().toString());
-        json.addProperty("timestamp", DateTimeFormatter.ISO_INSTANT.withZone(ZoneId.of("Z")).format(Instant.ofEpochMilli(event.getTimeStamp())));
-        json.addProperty("thread", event.getThreadName());
-        json.addProperty("message", Objects.requireNonNullElse(event.getRenderedMessage(), "null"));
-        return gson.toJson(json);
+        StringBuilder json = builders.get();
+        json.setLength(0);
+        json.append('{');
+        boolean first = appendField(json, "name", event.getLoggerName(), true);
+        first = appendField(json, "level", event.getLevel().toString(), first);
+        if (!first) {
+            json.append(',');
+        }
+        json.append("\"timestamp\":\"");
+        timestamps.get().append(json, event.getTimeStamp());
+        json.append('"');
+        appendField(json, "thread", event.getThreadName(), false);
+        appendField(json, "message", Objects.requireNonNullElse(event.getRenderedMessage(), "null"), false);
+        json.append('}');
+        String formatted = json.toString();
+        if (json.capacity() > MAX_RETAINED_CAPACITY) {
+            // Don't let one huge message pin a large buffer to the thread
+            builders.remove();
+        }
+        return formatted;
+    }
+
+    /**
+     * Writes the same object as {@link #format(LoggingEvent)} straight to the writer, without building it first.
+     */
+    public static void write(JsonWriter writer, LoggingEvent event) throws IOException {
+        writer.beginObject();
+        writeField(writer, "name", event.getLoggerName());
+        writeField(writer, "level", event.getLevel().toString());
+        writer.name("timestamp").value(timestamps.get().format(event.getTimeStamp()));
+        writeField(writer, "thread", event.getThreadName());
+        writer.name("message").value(Objects.requireNonNullElse(event.getRenderedMessage(), "null"));
+        writer.endObject();
+    }
+
+    /**
+     * Writes the field unless the value is null, matching {@link #appendField}.
+     */
+    private static void writeField(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+
+    /**
+     * Appends {@code "name":"value"}, preceded by a comma unless it is the first field.
+     * Null values are left out, as Gson does by default. Returns whether no field has been written yet.
+     */
+    private static boolean appendField(StringBuilder json, String name, String value, boolean first) {
+        if (value == null) {
+            return first;
+        }
+        if (!first) {
+            json.append(',');
+        }
+        json.append('"').append(name).append("\":\"");
+        appendEscaped(json, value);
+        json.append('"');
+        return false;
+    }
+
+    private static void appendEscaped(StringBuilder json, String value) {
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            json.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                case '\b':
+                    json.append("\\b");
+                    break;
+                case '\f':
+                    json.append("\\f");
+                    break;
+                default:
+                    json.append("\\u")
+                            .append(HEX_DIGITS[(c >> 12) & 0xF])
+                            .append(HEX_DIGITS[(c >> 8) & 0xF])
+                            .append(HEX_DIGITS[(c >> 4) & 0xF])
+                            .append(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        json.append(value, start, length);
     }
 
     @Override
@@ -34,4 +137,36 @@ public class JsonLayout extends Layout {
     public void activateOptions() {
         // No options to activate
     }
+
+    /**
+     * Produces the same text as ISO_INSTANT for millisecond timestamps, reformatting only when the second changes.
+     */
+    private static final class TimestampCache {
+        private long second = Long.MIN_VALUE;
+        private String prefix;
+
+        void append(StringBuilder out, long epochMillis) {
+            long epochSecond = Math.floorDiv(epochMillis, 1000);
+            if (epochSecond != second) {
+                String formatted = TIMESTAMP_FORMATTER.format(Instant.ofEpochSecond(epochSecond));
+                prefix = formatted.substring(0, formatted.length() - 1);
+                second = epochSecond;
+            }
+            out.append(prefix);
+            int millis = Math.floorMod(epochMillis, 1000);
+            if (millis != 0) {
+                out.append('.')
+                        .append((char) ('0' + millis / 100))
+                        .append((char) ('0' + millis / 10 % 10))
+                        .append((char) ('0' + millis % 10));
+            }
+            out.append('Z');
+        }
+
+        String format(long epochMillis) {
+            StringBuilder out = new StringBuilder(32);
+            append(out, epochMillis);
+            return out.toString();
+        }
+    }
 }
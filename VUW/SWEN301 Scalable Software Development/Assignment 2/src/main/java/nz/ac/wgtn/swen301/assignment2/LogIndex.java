@@ -0,0 +1,184 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Secondary index over an {@link EventBuffer}: for every sequence in the buffer's window it keeps the
+ * timestamp, an interned level id and an interned logger id in primitive columns, written on append.
+ * Queries scan these columns newest first and only fetch the events that pass, so filtering a large
+ * buffer touches a few bytes per event instead of the events themselves. Fetched events are checked
+ * against the full query again, which also covers the message substring.
+ */
+final class LogIndex {
+
+    private static final long EMPTY = -1;
+
+    private final InternTable<Level> levels = new InternTable<>();
+    private final InternTable<String> loggers = new InternTable<>();
+    private volatile Columns columns;
+
+    LogIndex(long maxSize) {
+        columns = new Columns(LogRing.capacityFor(maxSize, 0));
+    }
+
+    void add(long sequence, LoggingEvent event) {
+        int level = levels.intern(event.getLevel());
+        int logger = loggers.intern(event.getLoggerName());
+        Columns target = columns;
+        target.write(sequence, event.getTimeStamp(), level, logger);
+        // Same republishing as LogRing when the columns are swapped by a rebuild
+        Columns current;
+        while ((current = columns) != target) {
+            current.write(sequence, event.getTimeStamp(), level, logger);
+            target = current;
+        }
+    }
+
+    /**
+     * Replaces the columns with ones sized for the buffer's maxSize and fills them from its window.
+     */
+    synchronized void rebuild(EventBuffer<LoggingEvent> buffer) {
+        Columns rebuilt = new Columns(LogRing.capacityFor(buffer.getMaxSize(), 0));
+        columns = rebuilt;
+        long end = buffer.getNextSequence();
+        for (long s = buffer.getFirstSequence(); s < end; s++) {
+            LoggingEvent event = buffer.get(s);
+            if (event != null) {
+                rebuilt.write(s, event.getTimeStamp(), levels.intern(event.getLevel()), loggers.intern(event.getLoggerName()));
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} matching events, newest first, after skipping the first {@code offset} matches.
+     */
+    List<LoggingEvent> query(EventBuffer<LoggingEvent> buffer, LogQuery query, int offset, int limit) {
+        List<LoggingEvent> results = new ArrayList<>(Math.min(limit, 1024));
+        Scan scan = new Scan(query);
+        Columns current = columns;
+        long start = buffer.getFirstSequence();
+        int skipped = 0;
+        for (long s = buffer.getNextSequence() - 1; s >= start && results.size() < limit; s--) {
+            if (!scan.matches(current, s)) {
+                continue;
+            }
+            LoggingEvent event = buffer.get(s);
+            if (event != null && query.matches(event)) {
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    results.add(event);
+                }
+            }
+        }
+        return results;
+    }
+
+    long count(EventBuffer<LoggingEvent> buffer, LogQuery query) {
+        Scan scan = new Scan(query);
+        Columns current = columns;
+        long start = buffer.getFirstSequence();
+        long count = 0;
+        for (long s = buffer.getNextSequence() - 1; s >= start; s--) {
+            if (scan.matches(current, s)) {
+                if (query.getContains() == null) {
+                    count++;
+                } else {
+                    LoggingEvent event = buffer.get(s);
+                    if (event != null && query.matches(event)) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Level and logger criteria resolved to per-id lookup tables once per query.
+     */
+    private final class Scan {
+        private final LogQuery query;
+        private boolean[] levelMatches = new boolean[0];
+        private boolean[] loggerMatches = new boolean[0];
+
+        Scan(LogQuery query) {
+            this.query = query;
+        }
+
+        boolean matches(Columns columns, long sequence) {
+            int index = (int) (sequence & columns.mask);
+            if (columns.sequences.get(index) != sequence) {
+                return false;
+            }
+            return query.matchesTimestamp(columns.timestamps[index])
+                    && (query.getMinLevel() == null || levelMatches(columns.levels[index]))
+                    && (query.getLoggerPrefix() == null || loggerMatches(columns.loggers[index]));
+        }
+
+        private boolean levelMatches(int id) {
+            if (id >= levelMatches.length) {
+                levelMatches = resolve(levels, levelMatches, query::matchesLevel);
+            }
+            return levelMatches[id];
+        }
+
+        private boolean loggerMatches(int id) {
+            if (id >= loggerMatches.length) {
+                loggerMatches = resolve(loggers, loggerMatches, query::matchesLogger);
+            }
+            return loggerMatches[id];
+        }
+
+        private <T> boolean[] resolve(InternTable<T> table, boolean[] resolved, Predicate<T> predicate) {
+            int size = table.size();
+            boolean[] matches = Arrays.copyOf(resolved, Math.max(size, resolved.length));
+            for (int id = resolved.length; id < size; id++) {
+                matches[id] = predicate.test(table.get(id));
+            }
+            return matches;
+        }
+    }
+
+    private static final class Columns {
+        final int mask;
+        final AtomicLongArray sequences;
+        final long[] timestamps;
+        final int[] levels;
+        final int[] loggers;
+
+        Columns(int capacity) {
+            mask = capacity - 1;
+            sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, EMPTY);
+            }
+            timestamps = new long[capacity];
+            levels = new int[capacity];
+            loggers = new int[capacity];
+        }
+
+        /**
+         * Writes the row unless a later sequence already holds the slot. The sequence is published last,
+         * so a reader that sees it also sees the row; a racing lapped writer can at worst hide a row,
+         * never make a non-matching event show up, since fetched events are checked again.
+         */
+        void write(long sequence, long timestamp, int level, int logger) {
+            int index = (int) (sequence & mask);
+            if (sequences.get(index) > sequence) {
+                return;
+            }
+            timestamps[index] = timestamp;
+            levels[index] = level;
+            loggers[index] = logger;
+            sequences.set(index, sequence);
+        }
+    }
+}
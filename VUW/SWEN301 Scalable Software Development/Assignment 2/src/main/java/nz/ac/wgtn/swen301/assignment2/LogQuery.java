@@ -0,0 +1,69 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Filter over retained logs. Null or empty criteria match everything; the time window is [from, to).
+ */
+public final class LogQuery {
+
+    public static final LogQuery ALL = new LogQuery(null, null, Long.MIN_VALUE, Long.MAX_VALUE, null);
+
+    private final Level minLevel;
+    private final String loggerPrefix;
+    private final long fromMillis;
+    private final long toMillis;
+    private final String contains;
+
+    public LogQuery(Level minLevel, String loggerPrefix, long fromMillis, long toMillis, String contains) {
+        this.minLevel = minLevel;
+        this.loggerPrefix = loggerPrefix == null || loggerPrefix.isEmpty() ? null : loggerPrefix;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.contains = contains == null || contains.isEmpty() ? null : contains;
+    }
+
+    public Level getMinLevel() {
+        return minLevel;
+    }
+
+    public String getLoggerPrefix() {
+        return loggerPrefix;
+    }
+
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    public long getToMillis() {
+        return toMillis;
+    }
+
+    public String getContains() {
+        return contains;
+    }
+
+    public boolean matchesLevel(Level level) {
+        return minLevel == null || level.isGreaterOrEqual(minLevel);
+    }
+
+    public boolean matchesLogger(String loggerName) {
+        return loggerPrefix == null || loggerName.startsWith(loggerPrefix);
+    }
+
+    public boolean matchesTimestamp(long timestamp) {
+        return timestamp >= fromMillis && timestamp < toMillis;
+    }
+
+    public boolean matches(LoggingEvent event) {
+        if (!matchesLevel(event.getLevel()) || !matchesLogger(event.getLoggerName()) || !matchesTimestamp(event.getTimeStamp())) {
+            return false;
+        }
+        if (contains == null) {
+            return true;
+        }
+        String message = event.getRenderedMessage();
+        return message != null && message.contains(contains);
+    }
+}
@@ -0,0 +1,241 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Overwriting multi-producer ring buffer that keeps the most recent {@code maxSize} elements.
+ * Producers claim a sequence number with a single atomic increment and publish into the slot for that
+ * sequence, so appends never wait on each other or on readers. Evictions are implied by the sequence
+ * numbers, which makes the discarded count exact without a shared counter.
+ */
+public final class LogRing<E> implements EventBuffer<E> {
+
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private final AtomicLong head = new AtomicLong();
+    private volatile State<E> state;
+    private long headroom;
+
+    public LogRing(long maxSize) {
+        checkMaxSize(maxSize);
+        state = new State<>(new Slots<>(capacityFor(maxSize, 0)), maxSize, 0, 0);
+    }
+
+    @Override
+    public long add(E element) {
+        long sequence = head.getAndIncrement();
+        Slot<E> slot = new Slot<>(sequence, element);
+        Slots<E> slots = state.slots;
+        slots.publish(slot);
+        // A resize may have copied the slots before this one was published; publishing again is idempotent
+        Slots<E> current;
+        while ((current = state.slots) != slots) {
+            current.publish(slot);
+            slots = current;
+        }
+        return sequence;
+    }
+
+    @Override
+    public E get(long sequence) {
+        State<E> current = state;
+        long end = head.get();
+        if (sequence < current.start(end) || sequence >= end) {
+            return null;
+        }
+        Slot<E> slot = current.slots.get(sequence);
+        return slot != null && slot.sequence == sequence ? slot.element : null;
+    }
+
+    @Override
+    public E getEvicted(long sequence) {
+        Slot<E> slot = state.slots.get(sequence);
+        return slot != null && slot.sequence == sequence && sequence < getFirstSequence() ? slot.element : null;
+    }
+
+    @Override
+    public long getFirstSequence() {
+        return state.start(head.get());
+    }
+
+    @Override
+    public long getNextSequence() {
+        return head.get();
+    }
+
+    @Override
+    public long getMaxSize() {
+        return state.maxSize;
+    }
+
+    /**
+     * Changes the retained window; shrinking evicts the oldest elements immediately.
+     */
+    @Override
+    public synchronized void setMaxSize(long maxSize) {
+        checkMaxSize(maxSize);
+        resize(maxSize, headroom);
+    }
+
+    @Override
+    public long getHeadroom() {
+        return headroom;
+    }
+
+    @Override
+    public synchronized void setHeadroom(long headroom) {
+        if (headroom < 0) {
+            throw new IllegalArgumentException("headroom must be non-negative");
+        }
+        resize(state.maxSize, headroom);
+    }
+
+    private void resize(long maxSize, long headroom) {
+        this.headroom = headroom;
+        State<E> previous = state;
+        long sequence = head.get();
+        // Whatever the old window had already evicted stays evicted when it grows
+        long floor = Math.max(previous.floor, sequence - previous.maxSize);
+        int capacity = capacityFor(maxSize, headroom);
+        if (capacity <= previous.slots.capacity() && capacity * 2L > previous.slots.capacity()) {
+            state = new State<>(previous.slots, maxSize, floor, previous.base);
+            return;
+        }
+        Slots<E> slots = new Slots<>(capacity);
+        state = new State<>(slots, maxSize, floor, previous.base);
+        // Producers that read the old state before the swap have already claimed a sequence below this.
+        // Evicted elements that still fit are carried over too, so they can still be read through getEvicted
+        long end = head.get();
+        for (long s = Math.max(0, end - Math.min(capacity, previous.slots.capacity())); s < end; s++) {
+            Slot<E> slot = previous.slots.get(s);
+            if (slot != null && slot.sequence == s) {
+                slots.publish(slot);
+            }
+        }
+    }
+
+    @Override
+    public long getDiscardedCount() {
+        State<E> current = state;
+        return current.start(head.get()) - current.base;
+    }
+
+    /**
+     * Number of sequences in the retained window, including any still being published.
+     */
+    @Override
+    public long size() {
+        State<E> current = state;
+        long end = head.get();
+        return end - current.start(end);
+    }
+
+    /**
+     * Copies the retained window, oldest first. Elements whose producers have claimed a sequence
+     * but not yet published it are left out rather than waited for.
+     */
+    @Override
+    public List<E> snapshot() {
+        State<E> current = state;
+        long end = head.get();
+        long start = current.start(end);
+        List<E> elements = new ArrayList<>((int) Math.min(end - start, MAX_CAPACITY));
+        for (long s = start; s < end; s++) {
+            Slot<E> slot = current.slots.get(s);
+            if (slot != null && slot.sequence == s) {
+                elements.add(slot.element);
+            }
+        }
+        return Collections.unmodifiableList(elements);
+    }
+
+    /**
+     * Drops all elements and resets the discarded count.
+     */
+    @Override
+    public synchronized void clear() {
+        State<E> previous = state;
+        long sequence = head.get();
+        state = new State<>(new Slots<>(capacityFor(previous.maxSize, headroom)), previous.maxSize, sequence, sequence);
+    }
+
+    private static void checkMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be non-negative");
+        }
+    }
+
+    static int capacityFor(long maxSize, long headroom) {
+        if (maxSize > MAX_CAPACITY) {
+            throw new IllegalArgumentException("maxSize must not exceed " + MAX_CAPACITY);
+        }
+        long slots = Math.min(maxSize + headroom, MAX_CAPACITY);
+        int size = Integer.highestOneBit((int) Math.max(1, slots));
+        return size < slots ? size << 1 : size;
+    }
+
+    private static final class State<E> {
+        final Slots<E> slots;
+        final long maxSize;
+        final long floor;
+        final long base;
+
+        State(Slots<E> slots, long maxSize, long floor, long base) {
+            this.slots = slots;
+            this.maxSize = maxSize;
+            this.floor = floor;
+            this.base = base;
+        }
+
+        long start(long end) {
+            return Math.max(floor, end - maxSize);
+        }
+    }
+
+    private static final class Slot<E> {
+        final long sequence;
+        final E element;
+
+        Slot(long sequence, E element) {
+            this.sequence = sequence;
+            this.element = element;
+        }
+    }
+
+    private static final class Slots<E> {
+        private final int mask;
+        private final AtomicReferenceArray<Slot<E>> slots;
+
+        Slots(int capacity) {
+            mask = capacity - 1;
+            slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        Slot<E> get(long sequence) {
+            return slots.get((int) (sequence & mask));
+        }
+
+        /**
+         * Stores the slot unless a later sequence already occupies it, so a producer that was
+         * descheduled for a whole lap cannot overwrite a newer element.
+         */
+        void publish(Slot<E> slot) {
+            int index = (int) (slot.sequence & mask);
+            Slot<E> existing = slots.get(index);
+            while (existing == null || existing.sequence < slot.sequence) {
+                if (slots.compareAndSet(index, existing, slot)) {
+                    return;
+                }
+                existing = slots.get(index);
+            }
+        }
+    }
+}
@@ -1,26 +1,57 @@
 package nz.ac.wgtn.swen301.assignment2;
 
+import com.google.gson.stream.JsonWriter;
 import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 
 import javax.management.*;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Keeps the most recent {@code maxSize} logging events in memory, either as LoggingEvents in a
+ * {@link LogRing} or, when {@code offHeap} is set, as compact records in an {@link OffHeapLogRing}.
+ */
 public class MemAppender extends AppenderSkeleton {
 
-    private long maxSize;
-    private long discardedLogCount;
-    private final ArrayDeque<LoggingEvent> logList;
+    public static final int EXPORT_PROGRESS_INTERVAL = 10_000;
+    private static final int EXPORT_BUFFER_BYTES = 64 * 1024;
+
+    private volatile EventBuffer<LoggingEvent> logBuffer;
+    private final LogIndex logIndex;
+    private volatile long migratedDiscardedLogCount;
+    private int offHeapSlotBytes;
+    private volatile SpillWriter spillWriter;
+    private String spillDirectory;
+    private long spillMaxFileBytes;
+    private int spillMaxFiles;
+    private int spillBatchSize;
+    private long spillIntervalMillis;
+    private long spillHeadroom;
     private ObjectName mBeanName;
 
     public MemAppender() {
-        maxSize = 1000;
-        discardedLogCount = 0;
-        logList = new ArrayDeque<>((int) maxSize + 1);
+        logBuffer = new LogRing<>(1000);
+        logIndex = new LogIndex(1000);
+        migratedDiscardedLogCount = 0;
+        offHeapSlotBytes = OffHeapLogRing.DEFAULT_SLOT_BYTES;
+        spillDirectory = null;
+        spillMaxFileBytes = 64L * 1024 * 1024;
+        spillMaxFiles = 10;
+        spillBatchSize = 1024;
+        spillIntervalMillis = 200;
+        spillHeadroom = 8192;
         mBeanName = null;
     }
 
@@ -48,56 +79,253 @@ public class MemAppender extends AppenderSkeleton {
     }
 
     public long getMaxSize() {
-        return maxSize;
+        return logBuffer.getMaxSize();
     }
 
     public synchronized void setMaxSize(long maxSize) {
-        if (maxSize < 0) {
-            throw new IllegalArgumentException("maxSize must be non-negative");
+        logBuffer.setMaxSize(maxSize);
+        logIndex.rebuild(logBuffer);
+    }
+
+    public long getDiscardedLogCount() {
+        return migratedDiscardedLogCount + logBuffer.getDiscardedCount();
+    }
+
+    public boolean isOffHeap() {
+        return logBuffer instanceof OffHeapLogRing;
+    }
+
+    /**
+     * Switches between retaining LoggingEvents on the heap and storing compact records in direct memory.
+     * Off-heap storage keeps the rendered message but not throwables, MDC, NDC or location info.
+     * Retained logs are carried over; this is meant to be set while configuring the appender.
+     */
+    public synchronized void setOffHeap(boolean offHeap) {
+        if (offHeap != isOffHeap()) {
+            replaceBuffer(offHeap);
+        }
+    }
+
+    public int getOffHeapSlotBytes() {
+        return offHeapSlotBytes;
+    }
+
+    /**
+     * Size of each off-heap record; longer messages are kept on the heap.
+     */
+    public synchronized void setOffHeapSlotBytes(int offHeapSlotBytes) {
+        if (offHeapSlotBytes < OffHeapLogRing.MIN_SLOT_BYTES || offHeapSlotBytes % 8 != 0) {
+            throw new IllegalArgumentException("offHeapSlotBytes must be a multiple of 8 and at least " + OffHeapLogRing.MIN_SLOT_BYTES);
         }
-        this.maxSize = maxSize;
-        while (logList.size() > maxSize) {
-            logList.pollFirst();
-            discardedLogCount++;
+        this.offHeapSlotBytes = offHeapSlotBytes;
+        if (isOffHeap()) {
+            replaceBuffer(true);
         }
     }
 
-    public long getDiscardedLogCount() {
-        return discardedLogCount;
+    private void replaceBuffer(boolean offHeap) {
+        EventBuffer<LoggingEvent> previous = logBuffer;
+        EventBuffer<LoggingEvent> replacement = offHeap
+                ? new OffHeapLogRing(previous.getMaxSize(), offHeapSlotBytes)
+                : new LogRing<>(previous.getMaxSize());
+        replacement.setHeadroom(previous.getHeadroom());
+        previous.forEach(replacement::add);
+        migratedDiscardedLogCount += previous.getDiscardedCount();
+        logBuffer = replacement;
+        logIndex.rebuild(replacement);
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Directory that evicted logs are spilled to, or null to discard them. Takes effect on {@link #activateOptions()}.
+     */
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
     }
 
-    public synchronized List<LoggingEvent> getCurrentLogs() {
-        return List.copyOf(logList);
+    public long getSpillMaxFileBytes() {
+        return spillMaxFileBytes;
     }
 
-    public synchronized void exportToJSON(String fileName) throws IOException {
-        JsonLayout jsonLayout = new JsonLayout();
-        try (BufferedWriter file = new BufferedWriter(new FileWriter(fileName))) {
-            file.write("[");
-            Iterator<LoggingEvent> iterator = logList.iterator();
-            while (iterator.hasNext()) {
-                file.write(jsonLayout.format(iterator.next()));
-                if (iterator.hasNext()) {
-                    file.write(",");
+    public void setSpillMaxFileBytes(long spillMaxFileBytes) {
+        this.spillMaxFileBytes = spillMaxFileBytes;
+    }
+
+    public int getSpillMaxFiles() {
+        return spillMaxFiles;
+    }
+
+    /**
+     * Number of spill files to keep before deleting the oldest, or 0 to keep them all.
+     */
+    public void setSpillMaxFiles(int spillMaxFiles) {
+        this.spillMaxFiles = spillMaxFiles;
+    }
+
+    public int getSpillBatchSize() {
+        return spillBatchSize;
+    }
+
+    public void setSpillBatchSize(int spillBatchSize) {
+        this.spillBatchSize = spillBatchSize;
+    }
+
+    public long getSpillIntervalMillis() {
+        return spillIntervalMillis;
+    }
+
+    public void setSpillIntervalMillis(long spillIntervalMillis) {
+        this.spillIntervalMillis = spillIntervalMillis;
+    }
+
+    public long getSpillHeadroom() {
+        return spillHeadroom;
+    }
+
+    /**
+     * Number of evicted logs kept readable for the spill writer; evictions beyond this between two
+     * writer passes are lost.
+     */
+    public void setSpillHeadroom(long spillHeadroom) {
+        this.spillHeadroom = spillHeadroom;
+    }
+
+    public long getSpilledLogCount() {
+        SpillWriter writer = spillWriter;
+        return writer == null ? 0 : writer.getSpilledCount();
+    }
+
+    public long getSpillLostCount() {
+        SpillWriter writer = spillWriter;
+        return writer == null ? 0 : writer.getLostCount();
+    }
+
+    /**
+     * Starts or stops spilling evicted logs according to the spill properties.
+     */
+    @Override
+    public synchronized void activateOptions() {
+        stopSpilling();
+        if (spillDirectory == null || spillDirectory.isEmpty()) {
+            return;
+        }
+        logBuffer.setHeadroom(spillHeadroom);
+        try {
+            spillWriter = new SpillWriter(() -> logBuffer, Paths.get(spillDirectory), spillMaxFileBytes, spillMaxFiles,
+                    spillBatchSize, spillIntervalMillis);
+        } catch (IOException e) {
+            e.printStackTrace();
+            logBuffer.setHeadroom(0);
+        }
+    }
+
+    private void stopSpilling() {
+        SpillWriter writer = spillWriter;
+        if (writer != null) {
+            writer.close();
+            spillWriter = null;
+            logBuffer.setHeadroom(0);
+        }
+    }
+
+    public List<LoggingEvent> getCurrentLogs() {
+        return logBuffer.snapshot();
+    }
+
+    /**
+     * Number of retained logs, without copying them.
+     */
+    public long getLogCount() {
+        return logBuffer.size();
+    }
+
+    /**
+     * Returns up to {@code limit} retained logs matching the query, newest first, skipping the first {@code offset} matches.
+     */
+    public List<LoggingEvent> queryLogs(LogQuery query, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must be non-negative");
+        }
+        return logIndex.query(logBuffer, query, offset, limit);
+    }
+
+    public long countLogs(LogQuery query) {
+        return logIndex.count(logBuffer, query);
+    }
+
+    public void exportToJSON(String fileName) throws IOException {
+        exportToJSON(fileName, false, null);
+    }
+
+    /**
+     * Streams the current logs to the file as a JSON array, optionally gzip-compressed.
+     * The export reads the buffer as it goes rather than copying it first, and appends carry on at full speed while the
+     * file is written; logs evicted and overwritten before the export reaches them are left out.
+     * The listener, if given, is told the running count every {@value #EXPORT_PROGRESS_INTERVAL} events and at the end.
+     */
+    public void exportToJSON(String fileName, boolean gzip, ExportListener listener) throws IOException {
+        EventBuffer<LoggingEvent> buffer = logBuffer;
+        long total = buffer.size();
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)), EXPORT_BUFFER_BYTES);
+        if (gzip) {
+            out = new GZIPOutputStream(out, EXPORT_BUFFER_BYTES);
+        }
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.beginArray();
+            long count = 0;
+            for (LoggingEvent event : buffer) {
+                JsonLayout.write(writer, event);
+                if (++count % EXPORT_PROGRESS_INTERVAL == 0 && listener != null) {
+                    listener.exported(count, total);
                 }
             }
-            file.write("]");
+            writer.endArray();
+            if (listener != null) {
+                listener.exported(count, total);
+            }
         } // Automatically flushed and closed
     }
 
     @Override
-    protected synchronized void append(LoggingEvent event) {
-        logList.addLast(event);
-        if (logList.size() > maxSize) {
-            logList.pollFirst();
-            discardedLogCount++;
+    public void doAppend(LoggingEvent event) {
+        // Same checks as AppenderSkeleton.doAppend, without its synchronized block
+        if (closed || !isAsSevereAsThreshold(event.getLevel())) {
+            return;
+        }
+        Filter filter = getFirstFilter();
+        while (filter != null) {
+            int decision = filter.decide(event);
+            if (decision == Filter.DENY) {
+                return;
+            } else if (decision == Filter.ACCEPT) {
+                break;
+            }
+            filter = filter.getNext();
+        }
+        append(event);
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        EventBuffer<LoggingEvent> buffer = logBuffer;
+        long sequence = buffer.add(event);
+        logIndex.add(sequence, event);
+        SpillWriter writer = spillWriter;
+        if (writer != null) {
+            writer.onAppend(buffer);
         }
     }
 
     @Override
     public synchronized void close() {
-        discardedLogCount = 0;
-        logList.clear();
+        // Flush whatever has been evicted before the retained logs are cleared
+        stopSpilling();
+        logBuffer.clear();
+        migratedDiscardedLogCount = 0;
     }
 
     @Override
@@ -1,5 +1,6 @@
 package nz.ac.wgtn.swen301.assignment2;
 
+import org.apache.log4j.Level;
 import org.apache.log4j.PatternLayout;
 import org.apache.log4j.spi.LoggingEvent;
 
@@ -8,6 +9,8 @@ import java.util.List;
 
 public class MemAppenderManager implements MemAppenderManagerMBean {
 
+    public static final int MAX_QUERY_LIMIT = 10_000;
+
     private final MemAppender memAppender;
     private final PatternLayout patternLayout;
 
@@ -28,7 +31,39 @@ public class MemAppenderManager implements MemAppenderManagerMBean {
 
     @Override
     public long getLogCount() {
-        return memAppender.getCurrentLogs().size();
+        return memAppender.getLogCount();
+    }
+
+    @Override
+    public String[] queryLogs(String level, String loggerPrefix, long fromMillis, long toMillis, String contains, int offset, int limit) {
+        if (limit > MAX_QUERY_LIMIT) {
+            throw new IllegalArgumentException("limit must not exceed " + MAX_QUERY_LIMIT);
+        }
+        List<LoggingEvent> logs = memAppender.queryLogs(toQuery(level, loggerPrefix, fromMillis, toMillis, contains), offset, limit);
+        String[] logStrings = new String[logs.size()];
+        for (int i = 0; i < logs.size(); i++) {
+            logStrings[i] = patternLayout.format(logs.get(i));
+        }
+        return logStrings;
+    }
+
+    @Override
+    public long countLogs(String level, String loggerPrefix, long fromMillis, long toMillis, String contains) {
+        return memAppender.countLogs(toQuery(level, loggerPrefix, fromMillis, toMillis, contains));
+    }
+
+    private static LogQuery toQuery(String level, String loggerPrefix, long fromMillis, long toMillis, String contains) {
+        Level minLevel = null;
+        if (level != null && !level.isEmpty()) {
+            minLevel = Level.toLevel(level, null);
+            if (minLevel == null) {
+                throw new IllegalArgumentException("Unknown level: " + level);
+            }
+        }
+        return new LogQuery(minLevel, loggerPrefix,
+                fromMillis > 0 ? fromMillis : Long.MIN_VALUE,
+                toMillis > 0 ? toMillis : Long.MAX_VALUE,
+                contains);
     }
 
     @Override
@@ -36,6 +71,11 @@ public class MemAppenderManager implements MemAppenderManagerMBean {
         return memAppender.getDiscardedLogCount();
     }
 
+    @Override
+    public long getSpilledLogCount() {
+        return memAppender.getSpilledLogCount();
+    }
+
     @Override
     public void exportToJSON(String fileName) {
         try {
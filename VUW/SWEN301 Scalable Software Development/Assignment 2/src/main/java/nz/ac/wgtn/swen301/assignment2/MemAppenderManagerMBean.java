@@ -6,7 +6,18 @@ public interface MemAppenderManagerMBean {
 
     long getLogCount();
 
+    /**
+     * Formats up to {@code limit} logs matching the filters, newest first, after skipping {@code offset} matches.
+     * Empty or null level, loggerPrefix and contains match everything, as do non-positive fromMillis and toMillis.
+     * The level is a minimum (e.g. WARN also matches ERROR and FATAL) and the time window is [fromMillis, toMillis).
+     */
+    String[] queryLogs(String level, String loggerPrefix, long fromMillis, long toMillis, String contains, int offset, int limit);
+
+    long countLogs(String level, String loggerPrefix, long fromMillis, long toMillis, String contains);
+
     long getDiscardedLogCount();
 
+    long getSpilledLogCount();
+
     void exportToJSON(String fileName);
 }
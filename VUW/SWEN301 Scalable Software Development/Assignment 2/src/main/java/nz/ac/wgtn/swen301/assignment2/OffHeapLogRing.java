@@ -0,0 +1,534 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import org.apache.log4j.Category;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * Ring buffer with the same sequencing as {@link LogRing}, but storing each event as a fixed-size record in
+ * direct memory instead of retaining the LoggingEvent. A record holds the timestamp, interned level, logger
+ * and thread ids, and the UTF-8 rendered message; messages too long for the slot are kept on the heap.
+ * Throwables, MDC, NDC and location info are not retained. Events are decoded only when read from a snapshot
+ * or iterator.
+ * <p>
+ * Slot layout: [long stamp][long timestamp][int crc][int level][int logger][int thread][int message length][message].
+ * The stamp tells readers which sequence the slot holds and whether it is being written; the crc lets them
+ * reject a record torn by a producer that fell a whole lap behind.
+ * <p>
+ * Logger and thread ids come from intern tables owned by the current slots. Resizes and {@link #clear()} start
+ * new tables, re-interning the records they copy, and so does a rebuild at the same capacity once either table
+ * outgrows {@value #MIN_INTERN_LIMIT} values or twice the capacity, so churning thread names cannot grow them
+ * without bound: at most one value per retained record survives each rebuild.
+ */
+public final class OffHeapLogRing implements EventBuffer<LoggingEvent> {
+
+    public static final int DEFAULT_SLOT_BYTES = 128;
+    public static final int MIN_SLOT_BYTES = 64;
+
+    private static final int STAMP = 0;
+    private static final int TIMESTAMP = 8;
+    private static final int CRC = 16;
+    private static final int LEVEL = 20;
+    private static final int LOGGER = 24;
+    private static final int THREAD = 28;
+    private static final int MESSAGE_LENGTH = 32;
+    private static final int MESSAGE = 36;
+
+    private static final int NULL_MESSAGE = 0;
+    private static final int OVERFLOW_MESSAGE = -1;
+    private static final int CHUNK_BYTES = 1 << 30;
+    private static final int PAGE_BYTES = 1 << 20;
+    private static final int MIN_INTERN_LIMIT = 1024;
+    private static final String FQCN = Logger.class.getName();
+    private static final VarHandle STAMPS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final int slotBytes;
+    private final AtomicLong head = new AtomicLong();
+    private final InternTable<Level> levels = new InternTable<>();
+    private final ThreadLocal<Record> records;
+    private volatile State state;
+    private long headroom;
+
+    public OffHeapLogRing(long maxSize) {
+        this(maxSize, DEFAULT_SLOT_BYTES);
+    }
+
+    public OffHeapLogRing(long maxSize, int slotBytes) {
+        checkMaxSize(maxSize);
+        if (slotBytes < MIN_SLOT_BYTES || slotBytes % 8 != 0) {
+            throw new IllegalArgumentException("slotBytes must be a multiple of 8 and at least " + MIN_SLOT_BYTES);
+        }
+        this.slotBytes = slotBytes;
+        records = ThreadLocal.withInitial(() -> new Record(slotBytes));
+        state = new State(new Slots(LogRing.capacityFor(maxSize, 0)), maxSize, 0, 0);
+    }
+
+    public int getSlotBytes() {
+        return slotBytes;
+    }
+
+    @Override
+    public long add(LoggingEvent event) {
+        long sequence = head.getAndIncrement();
+        Record record = records.get();
+        Slots slots = state.slots;
+        encode(event, record, slots);
+        slots.write(sequence, record);
+        // A resize may have copied the slots before this one was written; writing again is a no-op if so
+        Slots current;
+        while ((current = state.slots) != slots) {
+            // The ids were interned for the old slots' tables
+            encode(event, record, current);
+            current.write(sequence, record);
+            slots = current;
+        }
+        if (slots.loggers.size() > slots.internLimit() || slots.threads.size() > slots.internLimit()) {
+            compact(slots);
+        }
+        return sequence;
+    }
+
+    @Override
+    public LoggingEvent get(long sequence) {
+        State current = state;
+        long end = head.get();
+        if (sequence < current.start(end) || sequence >= end) {
+            return null;
+        }
+        Record record = new Record(slotBytes);
+        return current.slots.read(sequence, record.image, 0, record) ? current.slots.decode(record.image, 0, record.overflow) : null;
+    }
+
+    @Override
+    public LoggingEvent getEvicted(long sequence) {
+        if (sequence >= getFirstSequence()) {
+            return null;
+        }
+        Record record = new Record(slotBytes);
+        Slots slots = state.slots;
+        return slots.read(sequence, record.image, 0, record) ? slots.decode(record.image, 0, record.overflow) : null;
+    }
+
+    @Override
+    public long getFirstSequence() {
+        return state.start(head.get());
+    }
+
+    @Override
+    public long getNextSequence() {
+        return head.get();
+    }
+
+    @Override
+    public long getMaxSize() {
+        return state.maxSize;
+    }
+
+    @Override
+    public synchronized void setMaxSize(long maxSize) {
+        checkMaxSize(maxSize);
+        resize(maxSize, headroom);
+    }
+
+    @Override
+    public long getHeadroom() {
+        return headroom;
+    }
+
+    @Override
+    public synchronized void setHeadroom(long headroom) {
+        if (headroom < 0) {
+            throw new IllegalArgumentException("headroom must be non-negative");
+        }
+        resize(state.maxSize, headroom);
+    }
+
+    private void resize(long maxSize, long headroom) {
+        this.headroom = headroom;
+        State previous = state;
+        long floor = Math.max(previous.floor, head.get() - previous.maxSize);
+        int capacity = LogRing.capacityFor(maxSize, headroom);
+        if (capacity <= previous.slots.capacity() && capacity * 2L > previous.slots.capacity()) {
+            state = new State(previous.slots, maxSize, floor, previous.base);
+            return;
+        }
+        rebuild(previous, new State(new Slots(capacity), maxSize, floor, previous.base));
+    }
+
+    /**
+     * Rebuilds the slots at the same capacity once their intern tables have outgrown the limit, dropping values
+     * no retained record refers to any more.
+     */
+    private synchronized void compact(Slots slots) {
+        State previous = state;
+        if (previous.slots != slots) {
+            return;
+        }
+        rebuild(previous, new State(new Slots(slots.capacity()), previous.maxSize, previous.floor, previous.base));
+    }
+
+    private void rebuild(State previous, State next) {
+        state = next;
+        Record record = new Record(slotBytes);
+        long end = head.get();
+        for (long s = Math.max(0, end - Math.min(next.slots.capacity(), previous.slots.capacity())); s < end; s++) {
+            if (previous.slots.read(s, record.image, 0, record)) {
+                next.slots.reintern(record, previous.slots);
+                next.slots.write(s, record);
+            }
+        }
+    }
+
+    /**
+     * Number of distinct thread names the current slots have interned.
+     */
+    int getInternedThreadCount() {
+        return state.slots.threads.size();
+    }
+
+    @Override
+    public long getDiscardedCount() {
+        State current = state;
+        return current.start(head.get()) - current.base;
+    }
+
+    @Override
+    public long size() {
+        State current = state;
+        long end = head.get();
+        return end - current.start(end);
+    }
+
+    /**
+     * Copies the raw records of the retained window into heap pages of about {@value #PAGE_BYTES} bytes, allocated
+     * as they fill; each event is decoded when first read from the list. Records still being written are left out
+     * rather than waited for. Use {@link #iterator()} to visit the window without copying all of it.
+     */
+    @Override
+    public List<LoggingEvent> snapshot() {
+        State current = state;
+        long end = head.get();
+        long first = firstReadable(current, end);
+        int slotsPerPage = Math.max(1, PAGE_BYTES / slotBytes);
+        List<byte[]> pages = new ArrayList<>();
+        List<String[]> overflow = new ArrayList<>();
+        Record record = new Record(slotBytes);
+        int count = 0;
+        for (long s = first; s < end; s++) {
+            int page = count / slotsPerPage;
+            int index = count % slotsPerPage;
+            if (page == pages.size()) {
+                // The window never exceeds the capacity, so what remains of it fits in an int
+                int slots = (int) Math.min(slotsPerPage, end - s);
+                pages.add(new byte[slots * slotBytes]);
+                overflow.add(new String[slots]);
+            }
+            if (current.slots.read(s, pages.get(page), index * slotBytes, record)) {
+                overflow.get(page)[index] = record.overflow;
+                count++;
+            }
+        }
+        return new Snapshot(current.slots, pages, overflow, slotsPerPage, count);
+    }
+
+    /**
+     * Decodes the retained window one record at a time, straight from direct memory.
+     */
+    @Override
+    public Iterator<LoggingEvent> iterator() {
+        State current = state;
+        long end = head.get();
+        return new Cursor(current.slots, firstReadable(current, end), end);
+    }
+
+    private static long firstReadable(State current, long end) {
+        return Math.max(current.start(end), end - current.slots.capacity());
+    }
+
+    @Override
+    public synchronized void clear() {
+        State previous = state;
+        long sequence = head.get();
+        state = new State(new Slots(LogRing.capacityFor(previous.maxSize, headroom)), previous.maxSize, sequence, sequence);
+    }
+
+    private void encode(LoggingEvent event, Record record, Slots slots) {
+        ByteBuffer image = record.buffer;
+        String message = event.getRenderedMessage();
+        String threadName = event.getThreadName();
+        image.putLong(TIMESTAMP, event.getTimeStamp());
+        image.putInt(LEVEL, levels.intern(event.getLevel()));
+        image.putInt(LOGGER, slots.loggers.intern(event.getLogger()));
+        image.putInt(THREAD, slots.threads.intern(threadName == null ? "" : threadName));
+        record.overflow = null;
+        if (message == null) {
+            image.putInt(MESSAGE_LENGTH, NULL_MESSAGE);
+        } else {
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length <= slotBytes - MESSAGE) {
+                image.putInt(MESSAGE_LENGTH, bytes.length + 1);
+                System.arraycopy(bytes, 0, record.image, MESSAGE, bytes.length);
+            } else {
+                image.putInt(MESSAGE_LENGTH, OVERFLOW_MESSAGE);
+                record.overflow = message;
+            }
+        }
+        image.putInt(CRC, checksum(record.crc, record.image, 0, record.overflow));
+    }
+
+    private int checksum(CRC32 crc, byte[] data, int offset, String overflow) {
+        int messageLength = getInt(data, offset + MESSAGE_LENGTH);
+        int inline = messageLength > 0 ? Math.min(messageLength - 1, slotBytes - MESSAGE) : 0;
+        crc.reset();
+        crc.update(data, offset + TIMESTAMP, CRC - TIMESTAMP);
+        crc.update(data, offset + LEVEL, MESSAGE + inline - LEVEL);
+        if (overflow != null) {
+            int hash = overflow.hashCode();
+            crc.update(hash >>> 24);
+            crc.update(hash >>> 16);
+            crc.update(hash >>> 8);
+            crc.update(hash);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static void checkMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be non-negative");
+        }
+    }
+
+    private static long writingStamp(long sequence) {
+        return ((sequence + 1) << 1) | 1;
+    }
+
+    private static long publishedStamp(long sequence) {
+        return (sequence + 1) << 1;
+    }
+
+    private static long sequenceOf(long stamp) {
+        return (stamp >>> 1) - 1;
+    }
+
+    /**
+     * Per-thread scratch space for encoding, copying and checking one record.
+     */
+    private static final class Record {
+        final byte[] image;
+        final ByteBuffer buffer;
+        final CRC32 crc = new CRC32();
+        String overflow;
+
+        Record(int slotBytes) {
+            image = new byte[slotBytes];
+            buffer = ByteBuffer.wrap(image);
+        }
+    }
+
+    private static final class State {
+        final Slots slots;
+        final long maxSize;
+        final long floor;
+        final long base;
+
+        State(Slots slots, long maxSize, long floor, long base) {
+            this.slots = slots;
+            this.maxSize = maxSize;
+            this.floor = floor;
+            this.base = base;
+        }
+
+        long start(long end) {
+            return Math.max(floor, end - maxSize);
+        }
+    }
+
+    private final class Slots {
+        private final int mask;
+        private final int slotsPerChunk;
+        private final ByteBuffer[] chunks;
+        private final AtomicReferenceArray<String> overflow;
+        final InternTable<Category> loggers = new InternTable<>();
+        final InternTable<String> threads = new InternTable<>();
+
+        Slots(int capacity) {
+            mask = capacity - 1;
+            slotsPerChunk = CHUNK_BYTES / slotBytes;
+            chunks = new ByteBuffer[(capacity + slotsPerChunk - 1) / slotsPerChunk];
+            for (int i = 0; i < chunks.length; i++) {
+                int slots = Math.min(slotsPerChunk, capacity - i * slotsPerChunk);
+                // Stamps are updated with aligned 8-byte atomics
+                chunks[i] = ByteBuffer.allocateDirect(slots * slotBytes + 8).alignedSlice(8);
+            }
+            overflow = new AtomicReferenceArray<>(capacity);
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        long internLimit() {
+            return Math.max(MIN_INTERN_LIMIT, 2L * capacity());
+        }
+
+        /**
+         * Replaces the logger and thread ids of a record read from other slots with ids from these slots' tables.
+         */
+        void reintern(Record record, Slots from) {
+            ByteBuffer image = record.buffer;
+            image.putInt(LOGGER, loggers.intern(from.loggers.get(image.getInt(LOGGER))));
+            image.putInt(THREAD, threads.intern(from.threads.get(image.getInt(THREAD))));
+            image.putInt(CRC, checksum(record.crc, record.image, 0, record.overflow));
+        }
+
+        /**
+         * Writes the record unless the slot already holds this or a later sequence. A producer that finds an
+         * older sequence still being written takes the slot over; the crc catches any late bytes from it.
+         */
+        void write(long sequence, Record record) {
+            int index = (int) (sequence & mask);
+            ByteBuffer chunk = chunks[index / slotsPerChunk];
+            int offset = (index % slotsPerChunk) * slotBytes;
+            long writing = writingStamp(sequence);
+            long existing = (long) STAMPS.getVolatile(chunk, offset + STAMP);
+            while (true) {
+                if (sequenceOf(existing) >= sequence) {
+                    return;
+                }
+                if (STAMPS.compareAndSet(chunk, offset + STAMP, existing, writing)) {
+                    break;
+                }
+                existing = (long) STAMPS.getVolatile(chunk, offset + STAMP);
+            }
+            chunk.duplicate().position(offset + TIMESTAMP).put(record.image, TIMESTAMP, slotBytes - TIMESTAMP);
+            overflow.set(index, record.overflow);
+            STAMPS.compareAndSet(chunk, offset + STAMP, writing, publishedStamp(sequence));
+        }
+
+        /**
+         * Copies the record for the sequence into the target, returning false if the slot no longer holds it,
+         * is mid-write, or changed while being copied. The overflow message is left in the record.
+         */
+        boolean read(long sequence, byte[] target, int targetOffset, Record record) {
+            int index = (int) (sequence & mask);
+            ByteBuffer chunk = chunks[index / slotsPerChunk];
+            int offset = (index % slotsPerChunk) * slotBytes;
+            long stamp = (long) STAMPS.getVolatile(chunk, offset + STAMP);
+            if (stamp != publishedStamp(sequence)) {
+                return false;
+            }
+            chunk.duplicate().position(offset).get(target, targetOffset, slotBytes);
+            String message = overflow.get(index);
+            VarHandle.loadLoadFence();
+            if ((long) STAMPS.getVolatile(chunk, offset + STAMP) != stamp) {
+                return false;
+            }
+            if (checksum(record.crc, target, targetOffset, message) != getInt(target, targetOffset + CRC)) {
+                return false;
+            }
+            record.overflow = message;
+            return true;
+        }
+
+        LoggingEvent decode(byte[] data, int offset, String overflow) {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            int messageLength = in.getInt(offset + MESSAGE_LENGTH);
+            String message;
+            if (messageLength == OVERFLOW_MESSAGE) {
+                message = overflow;
+            } else if (messageLength == NULL_MESSAGE) {
+                message = null;
+            } else {
+                message = new String(data, offset + MESSAGE, messageLength - 1, StandardCharsets.UTF_8);
+            }
+            return new LoggingEvent(FQCN, loggers.get(in.getInt(offset + LOGGER)), in.getLong(offset + TIMESTAMP),
+                    levels.get(in.getInt(offset + LEVEL)), message, threads.get(in.getInt(offset + THREAD)),
+                    null, null, null, null);
+        }
+    }
+
+    private final class Snapshot extends AbstractList<LoggingEvent> implements RandomAccess {
+        private final Slots slots;
+        private final List<byte[]> pages;
+        private final List<String[]> overflow;
+        private final int slotsPerPage;
+        private final int size;
+
+        Snapshot(Slots slots, List<byte[]> pages, List<String[]> overflow, int slotsPerPage, int size) {
+            this.slots = slots;
+            this.pages = pages;
+            this.overflow = overflow;
+            this.slotsPerPage = slotsPerPage;
+            this.size = size;
+        }
+
+        @Override
+        public LoggingEvent get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int page = index / slotsPerPage;
+            int slot = index % slotsPerPage;
+            return slots.decode(pages.get(page), slot * slotBytes, overflow.get(page)[slot]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private final class Cursor implements Iterator<LoggingEvent> {
+        private final Slots slots;
+        private final long end;
+        private final Record record = new Record(slotBytes);
+        private long sequence;
+        private LoggingEvent next;
+
+        Cursor(Slots slots, long first, long end) {
+            this.slots = slots;
+            this.end = end;
+            sequence = first;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && sequence < end) {
+                if (slots.read(sequence++, record.image, 0, record)) {
+                    next = slots.decode(record.image, 0, record.overflow);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public LoggingEvent next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LoggingEvent event = next;
+            next = null;
+            return event;
+        }
+    }
+}
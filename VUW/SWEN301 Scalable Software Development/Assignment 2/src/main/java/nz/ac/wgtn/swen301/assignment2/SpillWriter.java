@@ -0,0 +1,191 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Background writer for MemAppender's spill mode. It follows the sequences evicted from the appender's buffer,
+ * reading them from the buffer's headroom before their slots are reused, and appends them in batches as one
+ * JSON object per line to rolling {@code spill-NNNNNNNN.ndjson} files. Appending threads never do I/O here;
+ * at most they wake the writer when a batch is ready. Events overwritten before the writer reaches them are
+ * counted as lost.
+ */
+public class SpillWriter implements Closeable {
+
+    private static final Pattern FILE_NAME = Pattern.compile("spill-(\\d+)\\.ndjson");
+    private static final int FILE_BUFFER_BYTES = 64 * 1024;
+
+    private final Supplier<EventBuffer<LoggingEvent>> buffers;
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final int batchSize;
+    private final long intervalNanos;
+    private final JsonLayout jsonLayout = new JsonLayout();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong lostCount = new AtomicLong();
+    private final Deque<Path> files = new ArrayDeque<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long cursor;
+
+    // Only touched by the writer thread
+    private EventBuffer<LoggingEvent> buffer;
+    private OutputStream out;
+    private long fileBytes;
+    private long nextFileIndex;
+
+    public SpillWriter(Supplier<EventBuffer<LoggingEvent>> buffers, Path directory, long maxFileBytes, int maxFiles,
+                       int batchSize, long intervalMillis) throws IOException {
+        if (maxFileBytes <= 0 || maxFiles < 0 || batchSize <= 0 || intervalMillis <= 0) {
+            throw new IllegalArgumentException("maxFileBytes, batchSize and intervalMillis must be positive and maxFiles non-negative");
+        }
+        this.buffers = buffers;
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.batchSize = batchSize;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+        Files.createDirectories(directory);
+        try (Stream<Path> existing = Files.list(directory)) {
+            existing.filter(path -> FILE_NAME.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .forEach(files::add);
+        }
+        nextFileIndex = files.isEmpty() ? 0 : fileIndex(files.getLast()) + 1;
+        buffer = buffers.get();
+        cursor = buffer.getFirstSequence();
+        thread = new Thread(this::run, "MemAppender-spill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Called on the appending thread; wakes the writer once a batch of evicted events is waiting.
+     */
+    void onAppend(EventBuffer<LoggingEvent> current) {
+        if (current.getFirstSequence() - cursor >= batchSize) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    public long getLostCount() {
+        return lostCount.get();
+    }
+
+    /**
+     * Writes out everything evicted so far, then stops the writer.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            drain();
+        }
+        drain();
+        closeFile();
+    }
+
+    private void drain() {
+        EventBuffer<LoggingEvent> current = buffers.get();
+        if (current != buffer) {
+            // The appender switched storage; sequences restart in the new buffer
+            buffer = current;
+            cursor = current.getFirstSequence();
+        }
+        long first = current.getFirstSequence();
+        try {
+            while (cursor < first) {
+                long batchEnd = Math.min(first, cursor + batchSize);
+                for (long s = cursor; s < batchEnd; s++) {
+                    LoggingEvent event = current.getEvicted(s);
+                    if (event == null) {
+                        lostCount.incrementAndGet();
+                    } else {
+                        write(event);
+                        spilledCount.incrementAndGet();
+                    }
+                }
+                cursor = batchEnd;
+                if (out != null) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            lostCount.addAndGet(first - cursor);
+            cursor = first;
+            closeFile();
+        }
+    }
+
+    private void write(LoggingEvent event) throws IOException {
+        if (out == null || fileBytes >= maxFileBytes) {
+            rollFile();
+        }
+        byte[] line = (jsonLayout.format(event) + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(line);
+        fileBytes += line.length;
+    }
+
+    private void rollFile() throws IOException {
+        closeFile();
+        Path file = directory.resolve(String.format("spill-%08d.ndjson", nextFileIndex++));
+        out = new BufferedOutputStream(Channels.newOutputStream(FileChannel.open(file,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)), FILE_BUFFER_BYTES);
+        fileBytes = 0;
+        files.addLast(file);
+        while (maxFiles > 0 && files.size() > maxFiles) {
+            Files.deleteIfExists(files.removeFirst());
+        }
+    }
+
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        out = null;
+    }
+
+    private static long fileIndex(Path file) {
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+}
@@ -2,6 +2,7 @@ package nz.ac.wgtn.swen301.assignment2;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.spi.LoggingEvent;
@@ -10,7 +11,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -46,6 +50,40 @@ public class JsonLayoutTest {
         assertEquals(Objects.requireNonNullElse(event.getMessage(), "null").toString(), jsonObject.get("message").getAsString());
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {"quote \" backslash \\ slash /", "line\nbreak\r\ttab\b\f", "control \u0001\u001f", "unicode é中 \u2028\u2029 😀", "<html> & 'apostrophe' ="})
+    public void shouldEscapeMessages(String message) {
+        LoggingEvent event = new LoggingEvent("Test.Logger", Logger.getLogger("Test.Logger"), System.currentTimeMillis(), Level.INFO, message, null);
+        JsonObject jsonObject = JsonParser.parseString(new JsonLayout().format(event)).getAsJsonObject();
+        assertEquals(message, jsonObject.get("message").getAsString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0L, 1L, 999L, 1000L, 1_697_068_800_123L, 1_697_068_800_100L, 1_697_068_801_000L, -1L, -1001L, 253_402_300_800_000L})
+    public void shouldFormatTimestampsLikeIsoInstant(long timestamp) {
+        LoggingEvent event = new LoggingEvent("Test.Logger", Logger.getLogger("Test.Logger"), timestamp, Level.INFO, "Test message", null);
+        JsonObject jsonObject = JsonParser.parseString(new JsonLayout().format(event)).getAsJsonObject();
+        assertEquals(DateTimeFormatter.ISO_INSTANT.withZone(ZoneId.of("Z")).format(Instant.ofEpochMilli(timestamp)), jsonObject.get("timestamp").getAsString());
+    }
+
+    @Test
+    public void shouldWriteSameObjectAsFormat() throws IOException {
+        // log4j fills in the current thread's name, so only a subclass can leave it out
+        LoggingEvent event = new LoggingEvent("Test.Logger", Logger.getLogger("Test.Logger"), 1_697_068_800_123L, Level.INFO, "Test message", null) {
+            @Override
+            public String getThreadName() {
+                return null;
+            }
+        };
+        StringWriter written = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(written)) {
+            JsonLayout.write(writer, event);
+        }
+        JsonObject jsonObject = JsonParser.parseString(written.toString()).getAsJsonObject();
+        Assertions.assertFalse(jsonObject.has("thread"));
+        assertEquals(JsonParser.parseString(new JsonLayout().format(event)), jsonObject);
+    }
+
     @Test
     public void shouldIgnoreThrowable() {
         Assertions.assertTrue(new JsonLayout().ignoresThrowable());
@@ -0,0 +1,109 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class LogRingTest {
+
+    @Test
+    public void shouldKeepMostRecentElementsInOrder() {
+        LogRing<Integer> ring = new LogRing<>(3);
+        for (int i = 0; i < 10; i++) {
+            ring.add(i);
+        }
+        Assertions.assertEquals(List.of(7, 8, 9), ring.snapshot());
+        Assertions.assertEquals(7, ring.getDiscardedCount());
+        Assertions.assertEquals(3, ring.size());
+    }
+
+    @Test
+    public void shouldNotRestoreEvictedElementsWhenGrowing() {
+        LogRing<Integer> ring = new LogRing<>(2);
+        for (int i = 0; i < 5; i++) {
+            ring.add(i);
+        }
+        ring.setMaxSize(100);
+        Assertions.assertEquals(List.of(3, 4), ring.snapshot());
+        Assertions.assertEquals(3, ring.getDiscardedCount());
+
+        for (int i = 5; i < 105; i++) {
+            ring.add(i);
+        }
+        Assertions.assertEquals(100, ring.snapshot().size());
+        Assertions.assertEquals(5, (int) ring.snapshot().get(0));
+        Assertions.assertEquals(5, ring.getDiscardedCount());
+    }
+
+    @Test
+    public void shouldKeepWindowWhenShrinkingCapacity() {
+        LogRing<Integer> ring = new LogRing<>(1024);
+        for (int i = 0; i < 1000; i++) {
+            ring.add(i);
+        }
+        ring.setMaxSize(4);
+        Assertions.assertEquals(List.of(996, 997, 998, 999), ring.snapshot());
+        Assertions.assertEquals(996, ring.getDiscardedCount());
+    }
+
+    @Test
+    public void shouldResetOnClear() {
+        LogRing<Integer> ring = new LogRing<>(2);
+        for (int i = 0; i < 5; i++) {
+            ring.add(i);
+        }
+        ring.clear();
+        Assertions.assertTrue(ring.snapshot().isEmpty());
+        Assertions.assertEquals(0, ring.getDiscardedCount());
+        ring.add(5);
+        Assertions.assertEquals(List.of(5), ring.snapshot());
+    }
+
+    @Test
+    public void shouldAccountForEveryConcurrentAdd() throws InterruptedException {
+        int threadCount = 8;
+        int perThread = 50_000;
+        LogRing<Integer> ring = new LogRing<>(1000);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t * perThread;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ring.add(offset + i);
+                }
+            }));
+        }
+        Thread resizer = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                ring.setMaxSize(i % 2 == 0 ? 4000 : 1000);
+                ring.snapshot();
+            }
+        });
+        threads.forEach(Thread::start);
+        resizer.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        resizer.join();
+
+        List<Integer> retained = ring.snapshot();
+        Assertions.assertEquals(threadCount * perThread, retained.size() + ring.getDiscardedCount());
+        Assertions.assertEquals(retained.size(), new HashSet<>(retained).size());
+        int[] lastByProducer = new int[threadCount];
+        Arrays.fill(lastByProducer, -1);
+        for (int value : retained) {
+            int producer = value / perThread;
+            Assertions.assertTrue(value > lastByProducer[producer]);
+            lastByProducer[producer] = value;
+        }
+    }
+
+    @Test
+    public void shouldRejectNegativeMaxSize() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new LogRing<>(-1));
+    }
+}
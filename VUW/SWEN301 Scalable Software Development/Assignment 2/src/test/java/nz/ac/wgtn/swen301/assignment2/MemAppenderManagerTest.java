@@ -0,0 +1,47 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MemAppenderManagerTest {
+
+    private MemAppender memAppender;
+    private MemAppenderManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        memAppender = new MemAppender();
+        manager = new MemAppenderManager(memAppender);
+        Logger logger = Logger.getLogger("Test.Logger");
+        for (int i = 0; i < 10; i++) {
+            memAppender.append(new LoggingEvent("Test.Logger", logger, 1000L * (i + 1), i < 5 ? Level.INFO : Level.ERROR, "Message " + i, null));
+        }
+    }
+
+    @Test
+    public void shouldCountWithoutFilters() {
+        Assertions.assertEquals(10, manager.getLogCount());
+        Assertions.assertEquals(10, manager.countLogs(null, "", 0, 0, null));
+        Assertions.assertEquals(10, manager.getLogs().length);
+    }
+
+    @Test
+    public void shouldQueryWithFilters() {
+        Assertions.assertArrayEquals(new String[]{"Message 9" + Layout.LINE_SEP, "Message 8" + Layout.LINE_SEP}, manager.queryLogs("ERROR", "Test", 0, 0, "", 0, 2));
+        Assertions.assertArrayEquals(new String[]{"Message 3" + Layout.LINE_SEP, "Message 2" + Layout.LINE_SEP}, manager.queryLogs("", null, 3000, 5000, null, 0, 10));
+        Assertions.assertEquals(5, manager.countLogs("warn", null, 0, 0, null));
+        Assertions.assertEquals(0, manager.countLogs(null, "Other", 0, 0, null));
+    }
+
+    @Test
+    public void shouldRejectInvalidQueries() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> manager.queryLogs("LOUD", null, 0, 0, null, 0, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> manager.queryLogs(null, null, 0, 0, null, -1, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> manager.queryLogs(null, null, 0, 0, null, 0, MemAppenderManager.MAX_QUERY_LIMIT + 1));
+    }
+}
@@ -7,15 +7,23 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.spi.LoggingEvent;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 public class MemAppenderTest {
 
@@ -94,6 +102,89 @@ public class MemAppenderTest {
         }
     }
 
+    @Test
+    public void shouldExportGzipJsonWithProgress() throws Exception {
+        int count = MemAppender.EXPORT_PROGRESS_INTERVAL * 2 + 5;
+        setAppendAndValidateLogs(count, count, count, 0);
+        List<Long> progress = new ArrayList<>();
+        memAppender.exportToJSON(TEST_JSON_FILE, true, (exported, total) -> {
+            Assertions.assertEquals(count, total);
+            progress.add(exported);
+        });
+        Assertions.assertEquals(List.of((long) MemAppender.EXPORT_PROGRESS_INTERVAL, MemAppender.EXPORT_PROGRESS_INTERVAL * 2L, (long) count), progress);
+
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(TEST_JSON_FILE)), StandardCharsets.UTF_8)) {
+            JsonArray jsonArray = JsonParser.parseReader(reader).getAsJsonArray();
+            Assertions.assertEquals(count, jsonArray.size());
+            Assertions.assertEquals("Info Test 0", jsonArray.get(0).getAsJsonObject().get("message").getAsString());
+        }
+    }
+
+    @Test
+    public void shouldKeepAppendingDuringExport() throws Exception {
+        setAppendAndValidateLogs(1000, 1000, 1000, 0);
+        memAppender.exportToJSON(TEST_JSON_FILE, false, (exported, total) -> memAppender.append(createLoggingEvent(Level.WARN, "During export")));
+        Assertions.assertEquals(1, memAppender.getDiscardedLogCount());
+
+        try (FileReader reader = new FileReader(TEST_JSON_FILE)) {
+            Assertions.assertEquals(1000, JsonParser.parseReader(reader).getAsJsonArray().size());
+        }
+    }
+
+    @Test
+    public void shouldQueryLogsNewestFirst() {
+        memAppender.setMaxSize(100);
+        Logger other = Logger.getLogger("Other.Logger");
+        for (int i = 0; i < 150; i++) {
+            Level level = i % 3 == 0 ? Level.ERROR : Level.INFO;
+            Logger logger = i % 2 == 0 ? Logger.getLogger("Test.Logger") : other;
+            memAppender.append(new LoggingEvent(logger.getName(), logger, 1_000_000L + i, level, "Message " + i, null));
+        }
+        Assertions.assertEquals(100, memAppender.getLogCount());
+
+        List<LoggingEvent> errors = memAppender.queryLogs(new LogQuery(Level.WARN, "Test.", Long.MIN_VALUE, Long.MAX_VALUE, null), 0, 3);
+        Assertions.assertEquals(List.of("Message 144", "Message 138", "Message 132"), messages(errors));
+
+        List<LoggingEvent> page = memAppender.queryLogs(new LogQuery(Level.WARN, "Test.", Long.MIN_VALUE, Long.MAX_VALUE, null), 3, 2);
+        Assertions.assertEquals(List.of("Message 126", "Message 120"), messages(page));
+
+        LogQuery window = new LogQuery(null, null, 1_000_000L + 60, 1_000_000L + 70, "Message 6");
+        Assertions.assertEquals(List.of("Message 69", "Message 68", "Message 67", "Message 66", "Message 65",
+                "Message 64", "Message 63", "Message 62", "Message 61", "Message 60"), messages(memAppender.queryLogs(window, 0, 100)));
+        Assertions.assertTrue(memAppender.queryLogs(new LogQuery(null, null, 1_000_000L, 1_000_000L + 50, null), 0, 100).isEmpty());
+
+        Assertions.assertEquals(16, memAppender.countLogs(new LogQuery(Level.ERROR, "Test", Long.MIN_VALUE, Long.MAX_VALUE, null)));
+        Assertions.assertEquals(100, memAppender.countLogs(LogQuery.ALL));
+    }
+
+    @Test
+    public void shouldQueryAfterResizeAndOffHeapSwitch() {
+        setAppendAndValidateLogs(10, 20, 10, 10);
+        memAppender.setMaxSize(5000);
+        memAppender.setOffHeap(true);
+        memAppender.append(createLoggingEvent(Level.WARN, "Warn Test"));
+        Assertions.assertEquals(11, memAppender.countLogs(LogQuery.ALL));
+        Assertions.assertEquals(List.of("Warn Test"), messages(memAppender.queryLogs(new LogQuery(Level.WARN, null, Long.MIN_VALUE, Long.MAX_VALUE, null), 0, 10)));
+        Assertions.assertEquals(List.of("Info Test 19"), messages(memAppender.queryLogs(new LogQuery(null, null, Long.MIN_VALUE, Long.MAX_VALUE, "Test 19"), 0, 10)));
+    }
+
+    @Test
+    public void shouldSpillEvictedLogs(@TempDir Path spillDirectory) throws Exception {
+        memAppender.setSpillDirectory(spillDirectory.toString());
+        memAppender.setSpillIntervalMillis(10);
+        memAppender.activateOptions();
+        setAppendAndValidateLogs(5, 50, 5, 45);
+        memAppender.close();
+
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            long lines = 0;
+            for (Path file : (Iterable<Path>) files::iterator) {
+                lines += Files.readAllLines(file).size();
+            }
+            Assertions.assertEquals(45, lines);
+        }
+    }
+
     @Test
     public void shouldHaveInitialProperties() {
         Assertions.assertEquals(1000, memAppender.getMaxSize());
@@ -132,6 +223,24 @@ public class MemAppenderTest {
         });
     }
 
+    @Test
+    public void shouldKeepLogsWhenSwitchingToOffHeap() {
+        setAppendAndValidateLogs(3, 5, 3, 2);
+        memAppender.setOffHeap(true);
+        Assertions.assertTrue(memAppender.isOffHeap());
+        Assertions.assertEquals(3, memAppender.getCurrentLogs().size());
+        Assertions.assertEquals("Info Test 2", memAppender.getCurrentLogs().get(0).getRenderedMessage());
+        Assertions.assertEquals(2, memAppender.getDiscardedLogCount());
+
+        memAppender.append(createLoggingEvent(Level.WARN, "Warn Test"));
+        Assertions.assertEquals(3, memAppender.getDiscardedLogCount());
+        Assertions.assertEquals(Level.WARN, memAppender.getCurrentLogs().get(2).getLevel());
+
+        memAppender.close();
+        Assertions.assertEquals(0, memAppender.getDiscardedLogCount());
+        Assertions.assertTrue(memAppender.getCurrentLogs().isEmpty());
+    }
+
     @Test
     public void shouldNotRequireLayout() {
         Assertions.assertFalse(memAppender.requiresLayout());
@@ -146,6 +255,12 @@ public class MemAppenderTest {
         Assertions.assertEquals(expectedDiscardedLogCount, memAppender.getDiscardedLogCount());
     }
 
+    private static List<String> messages(List<LoggingEvent> logs) {
+        List<String> messages = new ArrayList<>();
+        logs.forEach(event -> messages.add(event.getRenderedMessage()));
+        return messages;
+    }
+
     private static LoggingEvent createLoggingEvent(Level level, String message) {
         return new LoggingEvent("Test.Logger", Logger.getLogger("Test.Logger"), System.currentTimeMillis(), level, message, null);
     }
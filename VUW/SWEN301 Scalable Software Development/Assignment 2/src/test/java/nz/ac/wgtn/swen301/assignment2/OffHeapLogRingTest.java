@@ -0,0 +1,149 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class OffHeapLogRingTest {
+
+    private static LoggingEvent createLoggingEvent(Level level, String message) {
+        return new LoggingEvent("Test.Logger", Logger.getLogger("Test.Logger"), 1_700_000_000_000L, level, message, null);
+    }
+
+    @Test
+    public void shouldRoundTripEventFields() {
+        OffHeapLogRing ring = new OffHeapLogRing(10);
+        LoggingEvent event = createLoggingEvent(Level.WARN, "Warning é中");
+        ring.add(event);
+
+        LoggingEvent decoded = ring.snapshot().get(0);
+        Assertions.assertEquals(event.getLoggerName(), decoded.getLoggerName());
+        Assertions.assertEquals(event.getLevel(), decoded.getLevel());
+        Assertions.assertEquals(event.getTimeStamp(), decoded.getTimeStamp());
+        Assertions.assertEquals(event.getThreadName(), decoded.getThreadName());
+        Assertions.assertEquals(event.getRenderedMessage(), decoded.getRenderedMessage());
+    }
+
+    @Test
+    public void shouldKeepNullAndOverflowingMessages() {
+        OffHeapLogRing ring = new OffHeapLogRing(10, OffHeapLogRing.MIN_SLOT_BYTES);
+        String longMessage = "x".repeat(1000);
+        ring.add(createLoggingEvent(Level.ERROR, null));
+        ring.add(createLoggingEvent(Level.INFO, longMessage));
+
+        List<LoggingEvent> logs = ring.snapshot();
+        Assertions.assertNull(logs.get(0).getRenderedMessage());
+        Assertions.assertEquals(longMessage, logs.get(1).getRenderedMessage());
+    }
+
+    @Test
+    public void shouldEvictAndResizeLikeHeapRing() {
+        OffHeapLogRing ring = new OffHeapLogRing(4);
+        for (int i = 0; i < 10; i++) {
+            ring.add(createLoggingEvent(Level.INFO, "Info " + i));
+        }
+        Assertions.assertEquals(6, ring.getDiscardedCount());
+        Assertions.assertEquals(List.of("Info 6", "Info 7", "Info 8", "Info 9"), messages(ring.snapshot()));
+
+        ring.setMaxSize(100);
+        ring.add(createLoggingEvent(Level.INFO, "Info 10"));
+        Assertions.assertEquals(List.of("Info 6", "Info 7", "Info 8", "Info 9", "Info 10"), messages(ring.snapshot()));
+
+        ring.setMaxSize(2);
+        Assertions.assertEquals(List.of("Info 9", "Info 10"), messages(ring.snapshot()));
+        Assertions.assertEquals(9, ring.getDiscardedCount());
+
+        ring.clear();
+        Assertions.assertTrue(ring.snapshot().isEmpty());
+        Assertions.assertEquals(0, ring.getDiscardedCount());
+    }
+
+    @Test
+    public void shouldKeepEveryRetainedRecordIntactUnderContention() throws InterruptedException {
+        int threadCount = 8;
+        int perThread = 20_000;
+        OffHeapLogRing ring = new OffHeapLogRing(512);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ring.add(createLoggingEvent(Level.DEBUG, Thread.currentThread().getName() + " " + i));
+                }
+            }, "producer-" + t));
+        }
+        threads.forEach(Thread::start);
+        for (int i = 0; i < 100; i++) {
+            for (LoggingEvent event : ring.snapshot()) {
+                Assertions.assertTrue(event.getRenderedMessage().startsWith(event.getThreadName() + " "));
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(512, ring.snapshot().size());
+        Assertions.assertEquals(threadCount * perThread - 512, ring.getDiscardedCount());
+    }
+
+    @Test
+    public void shouldSnapshotAcrossPages() {
+        int count = 40_000; // more than one page of minimum-size slots
+        OffHeapLogRing ring = new OffHeapLogRing(count, OffHeapLogRing.MIN_SLOT_BYTES);
+        for (int i = 0; i < count + 10; i++) {
+            ring.add(createLoggingEvent(Level.INFO, "Info " + i));
+        }
+        List<LoggingEvent> logs = ring.snapshot();
+        Assertions.assertEquals(count, logs.size());
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals("Info " + (i + 10), logs.get(i).getRenderedMessage());
+        }
+    }
+
+    @Test
+    public void shouldIterateRetainedWindow() {
+        OffHeapLogRing ring = new OffHeapLogRing(4, OffHeapLogRing.MIN_SLOT_BYTES);
+        for (int i = 0; i < 6; i++) {
+            ring.add(createLoggingEvent(Level.INFO, i == 5 ? "x".repeat(1000) : "Info " + i));
+        }
+        List<String> messages = new ArrayList<>();
+        ring.forEach(event -> messages.add(event.getRenderedMessage()));
+        Assertions.assertEquals(List.of("Info 2", "Info 3", "Info 4", "x".repeat(1000)), messages);
+
+        Iterator<LoggingEvent> iterator = new OffHeapLogRing(4).iterator();
+        Assertions.assertFalse(iterator.hasNext());
+        Assertions.assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    public void shouldBoundInternedThreadNames() {
+        OffHeapLogRing ring = new OffHeapLogRing(8);
+        Logger logger = Logger.getLogger("Test.Logger");
+        for (int i = 0; i < 20_000; i++) {
+            ring.add(new LoggingEvent("Test.Logger", logger, 1_700_000_000_000L, Level.INFO, "Info " + i, "worker-" + i,
+                    null, null, null, null));
+        }
+        Assertions.assertTrue(ring.getInternedThreadCount() <= 1024);
+        List<String> threads = new ArrayList<>();
+        ring.forEach(event -> threads.add(event.getThreadName()));
+        Assertions.assertEquals(List.of("worker-19992", "worker-19993", "worker-19994", "worker-19995",
+                "worker-19996", "worker-19997", "worker-19998", "worker-19999"), threads);
+    }
+
+    @Test
+    public void shouldRejectInvalidSlotBytes() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new OffHeapLogRing(10, 32));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new OffHeapLogRing(10, 100));
+    }
+
+    private static List<String> messages(List<LoggingEvent> logs) {
+        List<String> messages = new ArrayList<>();
+        logs.forEach(event -> messages.add(event.getRenderedMessage()));
+        return messages;
+    }
+}
@@ -0,0 +1,105 @@
+package nz.ac.wgtn.swen301.assignment2;
+
+import com.google.gson.JsonParser;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SpillWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private static LoggingEvent createLoggingEvent(String message) {
+        return new LoggingEvent("Test.Logger", Logger.getLogger("Test.Logger"), System.currentTimeMillis(), Level.INFO, message, null);
+    }
+
+    private List<Path> spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<String> spilledMessages() throws IOException {
+        List<String> messages = new ArrayList<>();
+        for (Path file : spillFiles()) {
+            for (String line : Files.readAllLines(file)) {
+                messages.add(JsonParser.parseString(line).getAsJsonObject().get("message").getAsString());
+            }
+        }
+        return messages;
+    }
+
+    @Test
+    public void shouldSpillEvictedEventsInOrder() throws IOException {
+        LogRing<LoggingEvent> ring = new LogRing<>(10);
+        ring.setHeadroom(1000);
+        SpillWriter writer = new SpillWriter(() -> ring, directory, 1 << 20, 0, 16, 10);
+        for (int i = 0; i < 100; i++) {
+            ring.add(createLoggingEvent("Message " + i));
+        }
+        writer.close();
+
+        Assertions.assertEquals(90, writer.getSpilledCount());
+        Assertions.assertEquals(0, writer.getLostCount());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 90; i++) {
+            expected.add("Message " + i);
+        }
+        Assertions.assertEquals(expected, spilledMessages());
+    }
+
+    @Test
+    public void shouldCountEventsOverwrittenBeforeSpilling() throws IOException {
+        LogRing<LoggingEvent> ring = new LogRing<>(8);
+        SpillWriter writer = new SpillWriter(() -> ring, directory, 1 << 20, 0, 16, 60_000);
+        for (int i = 0; i < 100; i++) {
+            ring.add(createLoggingEvent("Message " + i));
+        }
+        writer.close();
+
+        Assertions.assertEquals(92, writer.getSpilledCount() + writer.getLostCount());
+        Assertions.assertTrue(writer.getLostCount() > 0);
+    }
+
+    @Test
+    public void shouldRollAndRetainFiles() throws IOException {
+        OffHeapLogRing ring = new OffHeapLogRing(10);
+        ring.setHeadroom(10_000);
+        SpillWriter writer = new SpillWriter(() -> ring, directory, 1024, 3, 100, 10);
+        for (int i = 0; i < 1000; i++) {
+            ring.add(createLoggingEvent("Message " + i));
+        }
+        writer.close();
+
+        Assertions.assertEquals(990, writer.getSpilledCount());
+        List<Path> files = spillFiles();
+        Assertions.assertEquals(3, files.size());
+        List<String> messages = spilledMessages();
+        Assertions.assertEquals("Message 989", messages.get(messages.size() - 1));
+
+        SpillWriter resumed = new SpillWriter(() -> ring, directory, 1024, 3, 100, 10);
+        ring.add(createLoggingEvent("Message 1000"));
+        resumed.close();
+        Assertions.assertEquals(List.of("Message 990"), spilledMessagesIn(spillFiles().get(2)));
+    }
+
+    private static List<String> spilledMessagesIn(Path file) throws IOException {
+        List<String> messages = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            messages.add(JsonParser.parseString(line).getAsJsonObject().get("message").getAsString());
+        }
+        return messages;
+    }
+}
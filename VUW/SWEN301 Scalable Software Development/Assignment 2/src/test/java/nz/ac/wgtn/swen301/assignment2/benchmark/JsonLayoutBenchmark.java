@@ -0,0 +1,77 @@
+package nz.ac.wgtn.swen301.assignment2.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import nz.ac.wgtn.swen301.assignment2.JsonLayout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and allocation of JsonLayout against the previous Gson-based layout.
+ * Run with {@code mvn -P benchmark test-compile exec:java -Dbenchmark.class=nz.ac.wgtn.swen301.assignment2.benchmark.JsonLayoutBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonLayoutBenchmark {
+
+    private static final Gson gson = new Gson();
+
+    private final JsonLayout jsonLayout = new JsonLayout();
+    private LoggingEvent[] events;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Logger logger = Logger.getLogger(JsonLayoutBenchmark.class);
+        long now = System.currentTimeMillis();
+        // Spread over a few seconds so the timestamp cache sees realistic second changes
+        events = new LoggingEvent[1024];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new LoggingEvent(JsonLayoutBenchmark.class.getName(), logger, now + i * 7L, Level.INFO,
+                    "User " + i + " logged in from \"10.0.0." + (i % 256) + "\"", null);
+        }
+    }
+
+    private LoggingEvent nextEvent() {
+        return events[next++ & (events.length - 1)];
+    }
+
+    @Benchmark
+    public String jsonLayout() {
+        return jsonLayout.format(nextEvent());
+    }
+
+    @Benchmark
+    public String gsonLayout() {
+        LoggingEvent event = nextEvent();
+        JsonObject json = new JsonObject();
+        json.addProperty("name", event.getLoggerName());
+        json.addProperty("level", event.getLevel().toString());
+        json.addProperty("timestamp", DateTimeFormatter.ISO_INSTANT.withZone(ZoneId.of("Z")).format(Instant.ofEpochMilli(event.getTimeStamp())));
+        json.addProperty("thread", event.getThreadName());
+        json.addProperty("message", Objects.requireNonNullElse(event.getRenderedMessage(), "null"));
+        return gson.toJson(json);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonLayoutBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
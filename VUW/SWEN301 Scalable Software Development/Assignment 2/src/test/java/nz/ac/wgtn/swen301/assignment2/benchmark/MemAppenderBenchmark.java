@@ -0,0 +1,130 @@
+package nz.ac.wgtn.swen301.assignment2.benchmark;
+
+import nz.ac.wgtn.swen301.assignment2.MemAppender;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append throughput of the ring-buffer MemAppender against the previous monitor-guarded ArrayDeque,
+ * with a concurrent reader taking snapshots. Run with {@code mvn -P benchmark test-compile exec:java}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MemAppenderBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"1000", "100000"})
+    public int maxSize;
+
+    private MemAppender memAppender;
+    private LockingMemAppender lockingMemAppender;
+    private LoggingEvent event;
+
+    @Setup
+    public void setUp() {
+        memAppender = new MemAppender();
+        memAppender.setMaxSize(maxSize);
+        lockingMemAppender = new LockingMemAppender(maxSize);
+        Logger logger = Logger.getLogger(MemAppenderBenchmark.class);
+        event = new LoggingEvent(MemAppenderBenchmark.class.getName(), logger, System.currentTimeMillis(), Level.INFO, "Benchmark message", null);
+    }
+
+    @Benchmark
+    public void ringAppend() {
+        memAppender.doAppend(event);
+    }
+
+    @Benchmark
+    public void lockingAppend() {
+        lockingMemAppender.doAppend(event);
+    }
+
+    @Benchmark
+    @Group("ringWithReader")
+    @GroupThreads(7)
+    public void ringWriter() {
+        memAppender.doAppend(event);
+    }
+
+    @Benchmark
+    @Group("ringWithReader")
+    public List<LoggingEvent> ringReader() {
+        return memAppender.getCurrentLogs();
+    }
+
+    @Benchmark
+    @Group("lockingWithReader")
+    @GroupThreads(7)
+    public void lockingWriter() {
+        lockingMemAppender.doAppend(event);
+    }
+
+    @Benchmark
+    @Group("lockingWithReader")
+    public List<LoggingEvent> lockingReader() {
+        return lockingMemAppender.getCurrentLogs();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(MemAppenderBenchmark.class.getSimpleName() + ".(ring|locking)Append")
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+        new Runner(new OptionsBuilder()
+                .include(MemAppenderBenchmark.class.getSimpleName() + ".(ring|locking)WithReader")
+                .build()).run();
+    }
+
+    /**
+     * The previous MemAppender storage: an ArrayDeque guarded by the appender monitor.
+     */
+    static class LockingMemAppender extends AppenderSkeleton {
+        private final long maxSize;
+        private final ArrayDeque<LoggingEvent> logList = new ArrayDeque<>();
+
+        LockingMemAppender(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized List<LoggingEvent> getCurrentLogs() {
+            return List.copyOf(logList);
+        }
+
+        @Override
+        protected synchronized void append(LoggingEvent event) {
+            logList.addLast(event);
+            if (logList.size() > maxSize) {
+                logList.pollFirst();
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            logList.clear();
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
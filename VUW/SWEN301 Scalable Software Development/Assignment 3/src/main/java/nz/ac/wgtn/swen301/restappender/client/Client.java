@@ -75,18 +75,15 @@ public class Client {
                 new LogEvent(UUID.randomUUID(), "Test log 7", LocalDateTime.parse("12-10-2023 08:41:45", timestampFormatter), "main", "restappender.client.TestLogs", LogEvent.LogLevel.OFF, null)
         );
         HttpClient client = HttpClient.newHttpClient();
-        for (LogEvent logEvent : logEvents) {
-            String jsonLogData = gson.toJson(logEvent);
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(endpointURL))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonLogData))
-                    .build();
-            try {
-                client.send(request, HttpResponse.BodyHandlers.ofString());
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Error POSTing test data: " + e.getMessage());
-            }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(endpointURL))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(logEvents)))
+                .build();
+        try {
+            client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Error POSTing test data: " + e.getMessage());
         }
     }
 }
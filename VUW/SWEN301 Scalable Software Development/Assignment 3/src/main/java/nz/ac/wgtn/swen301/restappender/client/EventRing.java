@@ -0,0 +1,91 @@
+package nz.ac.wgtn.swen301.restappender.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer ring buffer.
+ * Each slot carries a sequence number that tells producers and consumers whether it is free or filled.
+ */
+public class EventRing<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public EventRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        buffer = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public boolean offer(E element) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get(); // another thread took this slot, move on rather than wait for it
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        buffer.lazySet(index, element);
+        sequences.setRelease(index, position + 1);
+        return true;
+    }
+
+    public E poll() {
+        long position = head.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = head.get(); // another thread took this slot, move on rather than wait for it
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+        E element = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequences.setRelease(index, position + mask + 1);
+        return element;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
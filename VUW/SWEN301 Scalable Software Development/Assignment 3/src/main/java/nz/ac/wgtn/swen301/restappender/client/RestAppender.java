@@ -0,0 +1,395 @@
+package nz.ac.wgtn.swen301.restappender.client;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import nz.ac.wgtn.swen301.restappender.server.LogEvent;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class RestAppender extends AppenderSkeleton {
+
+    public enum OverflowPolicy {
+        DROP_NEWEST, DROP_OLDEST, BLOCK
+    }
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(LogEvent.class, LogEvent.JSON_SERIALIZER)
+            .disableHtmlEscaping()
+            .create();
+
+    private String url = "http://localhost:8080/restappender/logs";
+    private int bufferSize = 8192;
+    private int batchSize = 256;
+    private long lingerMillis = 200;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+    private long blockTimeoutMillis = 10;
+    private int maxInFlightBatches = 4;
+    private int maxRetries = 5;
+    private long retryBackoffMillis = 100;
+    private long maxRetryBackoffMillis = 10_000;
+    private long closeTimeoutMillis = 5_000;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    // Events in batches waiting on the retry scheduler, dropped if close() discards them
+    private final AtomicLong pendingRetryEvents = new AtomicLong();
+
+    private EventRing<LogEvent> ring;
+    private HttpClient httpClient;
+    private ScheduledExecutorService retryScheduler;
+    private Semaphore inFlight;
+    private Thread flusher;
+    private volatile boolean running;
+
+    public RestAppender() {
+        super(false);
+    }
+
+    @Override
+    public synchronized void activateOptions() {
+        if (running) {
+            return;
+        }
+        ring = new EventRing<>(bufferSize);
+        inFlight = new Semaphore(maxInFlightBatches);
+        httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RestAppender-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        flusher = new Thread(this::flushLoop, "RestAppender-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void doAppend(LoggingEvent event) {
+        // Same checks as AppenderSkeleton.doAppend, without its synchronized block
+        if (closed || !isAsSevereAsThreshold(event.getLevel())) {
+            return;
+        }
+        Filter filter = getFirstFilter();
+        while (filter != null) {
+            int decision = filter.decide(event);
+            if (decision == Filter.DENY) {
+                return;
+            } else if (decision == Filter.ACCEPT) {
+                break;
+            }
+            filter = filter.getNext();
+        }
+        append(event);
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        if (!running) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        LogEvent logEvent = toLogEvent(event);
+        if (!ring.offer(logEvent) && !handleOverflow(logEvent)) {
+            droppedCount.incrementAndGet();
+        }
+        if (ring.size() >= batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private boolean handleOverflow(LogEvent logEvent) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!ring.offer(logEvent)) {
+                    if (ring.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                return true;
+            case BLOCK:
+                // Waits for buffer space only, never for the network, and gives up after the timeout
+                LockSupport.unpark(flusher);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(50));
+                    if (ring.offer(logEvent)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void flushLoop() {
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (running || !ring.isEmpty()) {
+            List<LogEvent> batch = new ArrayList<>(batchSize);
+            long deadline = System.nanoTime() + lingerNanos;
+            while (batch.size() < batchSize) {
+                LogEvent logEvent = ring.poll();
+                if (logEvent != null) {
+                    batch.add(logEvent);
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !running) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    droppedCount.addAndGet(batch.size());
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                send(batch, 0);
+            }
+        }
+    }
+
+    private void send(List<LogEvent> batch, int attempt) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(batch)))
+                .build();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            // A conflict means an earlier attempt of this batch was already stored
+            if (error == null && (response.statusCode() / 100 == 2 || response.statusCode() == 409)) {
+                sentCount.addAndGet(batch.size());
+                inFlight.release();
+            } else if (error == null && response.statusCode() / 100 == 4) {
+                droppedCount.addAndGet(batch.size());
+                inFlight.release();
+            } else if (attempt >= maxRetries || !scheduleRetry(batch, attempt)) {
+                droppedCount.addAndGet(batch.size());
+                inFlight.release();
+            }
+        });
+    }
+
+    private boolean scheduleRetry(List<LogEvent> batch, int attempt) {
+        long backoff = Math.min(maxRetryBackoffMillis, retryBackoffMillis << Math.min(attempt, 20));
+        long jitter = ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        pendingRetryEvents.addAndGet(batch.size());
+        try {
+            retryScheduler.schedule(() -> {
+                pendingRetryEvents.addAndGet(-batch.size());
+                send(batch, attempt + 1);
+            }, backoff / 2 + jitter, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pendingRetryEvents.addAndGet(-batch.size());
+            return false;
+        }
+        retryCount.incrementAndGet();
+        return true;
+    }
+
+    private static LogEvent toLogEvent(LoggingEvent event) {
+        LogEvent.LogLevel level;
+        try {
+            level = LogEvent.LogLevel.fromString(event.getLevel().toString());
+        } catch (IllegalArgumentException e) {
+            level = LogEvent.LogLevel.INFO;
+        }
+        String[] throwable = event.getThrowableStrRep();
+        return new LogEvent(
+                randomUUID(),
+                String.valueOf(event.getRenderedMessage()),
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(event.getTimeStamp()), ZoneId.systemDefault()),
+                event.getThreadName(),
+                event.getLoggerName(),
+                level,
+                throwable == null ? null : String.join("\n", throwable)
+        );
+    }
+
+    private static UUID randomUUID() {
+        // Version 4 UUID without contending on the shared SecureRandom used by UUID.randomUUID()
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(closeTimeoutMillis);
+            if (inFlight.tryAcquire(maxInFlightBatches, closeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                inFlight.release(maxInFlightBatches);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        retryScheduler.shutdownNow();
+        droppedCount.addAndGet(pendingRetryEvents.getAndSet(0));
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return false;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public int getBufferedCount() {
+        return ring == null ? 0 : ring.size();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = requirePositive(bufferSize, "bufferSize");
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = requirePositive(batchSize, "batchSize");
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public void setLingerMillis(long lingerMillis) {
+        this.lingerMillis = requireNonNegative(lingerMillis, "lingerMillis");
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy.name();
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.toUpperCase());
+    }
+
+    public long getBlockTimeoutMillis() {
+        return blockTimeoutMillis;
+    }
+
+    public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+        this.blockTimeoutMillis = requireNonNegative(blockTimeoutMillis, "blockTimeoutMillis");
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = requirePositive(maxInFlightBatches, "maxInFlightBatches");
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = (int) requireNonNegative(maxRetries, "maxRetries");
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = requirePositive(retryBackoffMillis, "retryBackoffMillis");
+    }
+
+    public long getMaxRetryBackoffMillis() {
+        return maxRetryBackoffMillis;
+    }
+
+    public void setMaxRetryBackoffMillis(long maxRetryBackoffMillis) {
+        this.maxRetryBackoffMillis = requirePositive(maxRetryBackoffMillis, "maxRetryBackoffMillis");
+    }
+
+    public long getCloseTimeoutMillis() {
+        return closeTimeoutMillis;
+    }
+
+    public void setCloseTimeoutMillis(long closeTimeoutMillis) {
+        this.closeTimeoutMillis = requireNonNegative(closeTimeoutMillis, "closeTimeoutMillis");
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return value;
+    }
+
+    private static long requirePositive(long value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return value;
+    }
+
+    private static long requireNonNegative(long value, String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must be non-negative");
+        }
+        return value;
+    }
+}
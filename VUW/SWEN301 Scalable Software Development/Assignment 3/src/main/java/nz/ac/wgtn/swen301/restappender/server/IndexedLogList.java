@@ -0,0 +1,163 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Synchronized list of log events that keeps timestamp-ordered indexes (overall, per level and per logger)
+ * and a set of ids up to date on every mutation, so that queries cost in proportion to the page rather than the list.
+ */
+public class IndexedLogList extends AbstractList<LogEvent> implements RandomAccess {
+    private final ArrayList<LogEvent> logs = new ArrayList<>();
+    private final Map<LogKey, Integer> counts = new HashMap<>();
+    private final Map<UUID, Integer> idCounts = new HashMap<>();
+    private final NavigableMap<LogKey, LogEvent> byTimestamp = new TreeMap<>();
+    private final Map<LogEvent.LogLevel, NavigableMap<LogKey, LogEvent>> byLevel = new EnumMap<>(LogEvent.LogLevel.class);
+    private final NavigableMap<String, NavigableMap<LogKey, LogEvent>> byLogger = new TreeMap<>();
+
+    public IndexedLogList() {
+        for (LogEvent.LogLevel level : LogEvent.LogLevel.values()) {
+            byLevel.put(level, new TreeMap<>());
+        }
+    }
+
+    @Override
+    public synchronized LogEvent get(int index) {
+        return logs.get(index);
+    }
+
+    @Override
+    public synchronized int size() {
+        return logs.size();
+    }
+
+    @Override
+    public synchronized LogEvent set(int index, LogEvent logEvent) {
+        LogEvent previous = logs.set(index, logEvent);
+        unindex(previous);
+        index(logEvent);
+        return previous;
+    }
+
+    @Override
+    public synchronized void add(int index, LogEvent logEvent) {
+        logs.add(index, logEvent);
+        index(logEvent);
+        modCount++;
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends LogEvent> logEvents) {
+        return super.addAll(logEvents);
+    }
+
+    @Override
+    public synchronized LogEvent remove(int index) {
+        LogEvent removed = logs.remove(index);
+        unindex(removed);
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        logs.clear();
+        counts.clear();
+        idCounts.clear();
+        byTimestamp.clear();
+        byLevel.values().forEach(Map::clear);
+        byLogger.clear();
+        modCount++;
+    }
+
+    @Override
+    public synchronized void sort(Comparator<? super LogEvent> comparator) {
+        logs.sort(comparator);
+        modCount++;
+    }
+
+    public synchronized boolean containsId(UUID id) {
+        return idCounts.containsKey(id);
+    }
+
+    private void index(LogEvent logEvent) {
+        idCounts.merge(logEvent.getId(), 1, Integer::sum);
+        LogKey key = LogKey.of(logEvent);
+        if (counts.merge(key, 1, Integer::sum) > 1) {
+            return;
+        }
+        byTimestamp.put(key, logEvent);
+        byLevel.get(logEvent.getLevel()).put(key, logEvent);
+        byLogger.computeIfAbsent(logEvent.getLogger(), logger -> new TreeMap<>()).put(key, logEvent);
+    }
+
+    private void unindex(LogEvent logEvent) {
+        idCounts.computeIfPresent(logEvent.getId(), (id, count) -> count > 1 ? count - 1 : null);
+        LogKey key = LogKey.of(logEvent);
+        Integer count = counts.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            counts.put(key, count - 1);
+            return;
+        }
+        counts.remove(key);
+        byTimestamp.remove(key);
+        byLevel.get(logEvent.getLevel()).remove(key);
+        NavigableMap<LogKey, LogEvent> loggerIndex = byLogger.get(logEvent.getLogger());
+        if (loggerIndex != null) {
+            loggerIndex.remove(key);
+            if (loggerIndex.isEmpty()) {
+                byLogger.remove(logEvent.getLogger());
+            }
+        }
+    }
+
+    public synchronized List<LogEvent> query(LogQuery query) {
+        List<LogEvent> results = new ArrayList<>();
+        if (query.isEmptyRange() || query.getLimit() <= 0) {
+            return results;
+        }
+        List<NavigableMap<LogKey, LogEvent>> indexes = new ArrayList<>();
+        if (query.getLoggerPrefix() != null) {
+            String prefix = query.getLoggerPrefix();
+            indexes.addAll(byLogger.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+        } else if (query.getLevel() == LogEvent.LogLevel.ALL) {
+            indexes.add(byTimestamp);
+        } else {
+            byLevel.forEach((level, index) -> {
+                if (level.isAtLeastLevel(query.getLevel())) {
+                    indexes.add(index);
+                }
+            });
+        }
+
+        List<Iterator<Map.Entry<LogKey, LogEvent>>> sources = new ArrayList<>();
+        for (NavigableMap<LogKey, LogEvent> index : indexes) {
+            NavigableMap<LogKey, LogEvent> range = index.subMap(
+                    query.getLowerBound(), query.isLowerInclusive(), query.getUpperBound(), query.isUpperInclusive());
+            sources.add((query.isAscending() ? range : range.descendingMap()).entrySet().iterator());
+        }
+        Comparator<Map.Entry<LogKey, LogEvent>> order = Map.Entry.comparingByKey();
+        Iterator<Map.Entry<LogKey, LogEvent>> merged = new MergingIterator<>(sources, query.isAscending() ? order : order.reversed());
+        while (merged.hasNext() && results.size() < query.getLimit()) {
+            LogEvent logEvent = merged.next().getValue();
+            if (query.matches(logEvent)) {
+                results.add(logEvent);
+            }
+        }
+        return results;
+    }
+}
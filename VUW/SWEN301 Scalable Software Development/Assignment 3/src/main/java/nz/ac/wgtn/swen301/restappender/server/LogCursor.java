@@ -0,0 +1,48 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Opaque pagination position: the key of a page's boundary event and whether the next page lies
+ * on its older or newer side.
+ */
+public final class LogCursor {
+    private static final int ENCODED_BYTES = 8 + 4 + 8 + 8 + 1;
+
+    private final LogKey key;
+    private final boolean newer;
+
+    public LogCursor(LogKey key, boolean newer) {
+        this.key = key;
+        this.newer = newer;
+    }
+
+    public static LogCursor decode(String cursor) throws IllegalArgumentException {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if (bytes.length != ENCODED_BYTES) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        LogKey key = new LogKey(buffer.getLong(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+        return new LogCursor(key, buffer.get() != 0);
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES);
+        buffer.putLong(key.getEpochSecond());
+        buffer.putInt(key.getNano());
+        buffer.putLong(key.getIdMostSignificantBits());
+        buffer.putLong(key.getIdLeastSignificantBits());
+        buffer.put((byte) (newer ? 1 : 0));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public LogKey getKey() {
+        return key;
+    }
+
+    public boolean isNewer() {
+        return newer;
+    }
+}
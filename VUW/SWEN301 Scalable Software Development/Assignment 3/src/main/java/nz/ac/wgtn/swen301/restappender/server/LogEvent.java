@@ -11,7 +11,7 @@ import java.util.UUID;
 
 public class LogEvent {
     private static final List<String> PROPERTIES = List.of("id", "message", "timestamp", "thread", "logger", "level");
-    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+    public static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
 
     public static final JsonSerializer<LogEvent> JSON_SERIALIZER = (logEntry, t, j) -> {
         JsonObject json = new JsonObject();
@@ -0,0 +1,208 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Binary record format used by the segment store:
+ * [int payload length][int crc32 of payload][payload], where the payload is
+ * id (2 longs), epoch second (long), nanos (int), level ordinal (byte),
+ * then message, thread, logger and errorDetails as varint-length-prefixed UTF-8.
+ * The errorDetails length is stored plus one so that zero can mean null.
+ */
+public final class LogEventCodec {
+    public static final int HEADER_BYTES = 8;
+    public static final int ID_OFFSET = 0;
+    public static final int SECONDS_OFFSET = 16;
+    public static final int LEVEL_OFFSET = 28;
+    public static final int MIN_PAYLOAD_BYTES = LEVEL_OFFSET + 1 + 4;
+
+    private static final LogEvent.LogLevel[] LEVELS = LogEvent.LogLevel.values();
+
+    private LogEventCodec() {
+    }
+
+    public static long toEpochSecond(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Appends the encoded record to the buffer, returning a larger copy if it did not fit.
+     */
+    public static ByteBuffer encode(LogEvent logEvent, ByteBuffer buffer) {
+        byte[] message = logEvent.getMessage().getBytes(StandardCharsets.UTF_8);
+        byte[] thread = logEvent.getThread().getBytes(StandardCharsets.UTF_8);
+        byte[] logger = logEvent.getLogger().getBytes(StandardCharsets.UTF_8);
+        byte[] errorDetails = logEvent.getErrorDetails() == null ? null : logEvent.getErrorDetails().getBytes(StandardCharsets.UTF_8);
+        int maxLength = HEADER_BYTES + LEVEL_OFFSET + 1 + 4 * 5
+                + message.length + thread.length + logger.length + (errorDetails == null ? 0 : errorDetails.length);
+        if (buffer.remaining() < maxLength) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + maxLength));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        UUID id = logEvent.getId();
+        LocalDateTime timestamp = logEvent.getTimestamp();
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        buffer.putLong(toEpochSecond(timestamp));
+        buffer.putInt(timestamp.getNano());
+        buffer.put((byte) logEvent.getLevel().ordinal());
+        putBytes(buffer, message, 0);
+        putBytes(buffer, thread, 0);
+        putBytes(buffer, logger, 0);
+        if (errorDetails == null) {
+            putVarInt(buffer, 0);
+        } else {
+            putBytes(buffer, errorDetails, 1);
+        }
+        int end = buffer.position();
+        int payloadLength = end - start - HEADER_BYTES;
+
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + HEADER_BYTES).limit(end);
+        crc.update(payload);
+        buffer.putInt(start, payloadLength);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        return buffer;
+    }
+
+    /**
+     * Returns the payload length of the valid record at the position, or -1 if the record is torn or corrupt.
+     */
+    public static int validate(ByteBuffer segment, int position) {
+        if (position + HEADER_BYTES > segment.limit()) {
+            return -1;
+        }
+        int payloadLength = segment.getInt(position);
+        if (payloadLength < MIN_PAYLOAD_BYTES || payloadLength > segment.limit() - position - HEADER_BYTES) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = segment.duplicate();
+        payload.position(position + HEADER_BYTES).limit(position + HEADER_BYTES + payloadLength);
+        crc.update(payload);
+        return (int) crc.getValue() == segment.getInt(position + 4) ? payloadLength : -1;
+    }
+
+    public static int recordLength(ByteBuffer segment, int position) {
+        return HEADER_BYTES + segment.getInt(position);
+    }
+
+    public static long idMostSignificantBits(ByteBuffer segment, int position) {
+        return segment.getLong(position + HEADER_BYTES + ID_OFFSET);
+    }
+
+    public static long idLeastSignificantBits(ByteBuffer segment, int position) {
+        return segment.getLong(position + HEADER_BYTES + ID_OFFSET + 8);
+    }
+
+    public static long epochSecond(ByteBuffer segment, int position) {
+        return segment.getLong(position + HEADER_BYTES + SECONDS_OFFSET);
+    }
+
+    public static int nano(ByteBuffer segment, int position) {
+        return segment.getInt(position + HEADER_BYTES + SECONDS_OFFSET + 8);
+    }
+
+    /**
+     * Compares the logger name's UTF-8 bytes against the prefix without decoding the record.
+     */
+    public static boolean loggerStartsWith(ByteBuffer segment, int position, byte[] prefix) {
+        ByteBuffer in = atLogger(segment, position);
+        int length = getVarInt(in);
+        if (length < prefix.length) {
+            return false;
+        }
+        int start = in.position();
+        for (int i = 0; i < prefix.length; i++) {
+            if (in.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static String logger(ByteBuffer segment, int position) {
+        return getString(atLogger(segment, position), 0);
+    }
+
+    private static ByteBuffer atLogger(ByteBuffer segment, int position) {
+        ByteBuffer in = segment.duplicate();
+        in.position(position + HEADER_BYTES + LEVEL_OFFSET + 1);
+        for (int skipped = 0; skipped < 2; skipped++) {
+            int length = getVarInt(in);
+            in.position(in.position() + length);
+        }
+        return in;
+    }
+
+    public static LogEvent.LogLevel level(ByteBuffer segment, int position) {
+        return LEVELS[segment.get(position + HEADER_BYTES + LEVEL_OFFSET)];
+    }
+
+    public static LogEvent decode(ByteBuffer segment, int position) {
+        ByteBuffer in = segment.duplicate();
+        in.position(position + HEADER_BYTES);
+        UUID id = new UUID(in.getLong(), in.getLong());
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+        LogEvent.LogLevel level = LEVELS[in.get()];
+        String message = getString(in, 0);
+        String thread = getString(in, 0);
+        String logger = getString(in, 0);
+        String errorDetails = getString(in, 1);
+        return new LogEvent(id, message, timestamp, thread, logger, level, errorDetails);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes, int lengthBias) {
+        putVarInt(buffer, bytes.length + lengthBias);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in, int lengthBias) {
+        int length = getVarInt(in);
+        if (length == 0 && lengthBias > 0) {
+            return null;
+        }
+        length -= lengthBias;
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes, 0, length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,90 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Total order over log events used by the query indexes: by timestamp, then by id.
+ */
+public final class LogKey implements Comparable<LogKey> {
+    public static final LogKey MIN = new LogKey(Long.MIN_VALUE, 0, Long.MIN_VALUE, Long.MIN_VALUE);
+    public static final LogKey MAX = new LogKey(Long.MAX_VALUE, 999_999_999, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long epochSecond;
+    private final int nano;
+    private final long idMostSignificantBits;
+    private final long idLeastSignificantBits;
+
+    public LogKey(long epochSecond, int nano, long idMostSignificantBits, long idLeastSignificantBits) {
+        this.epochSecond = epochSecond;
+        this.nano = nano;
+        this.idMostSignificantBits = idMostSignificantBits;
+        this.idLeastSignificantBits = idLeastSignificantBits;
+    }
+
+    public static LogKey of(LogEvent logEvent) {
+        UUID id = logEvent.getId();
+        return new LogKey(LogEventCodec.toEpochSecond(logEvent.getTimestamp()), logEvent.getTimestamp().getNano(),
+                id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public static LogKey read(ByteBuffer segment, int position) {
+        return new LogKey(LogEventCodec.epochSecond(segment, position), LogEventCodec.nano(segment, position),
+                LogEventCodec.idMostSignificantBits(segment, position), LogEventCodec.idLeastSignificantBits(segment, position));
+    }
+
+    /**
+     * The smallest key with the given timestamp.
+     */
+    public static LogKey lowest(LocalDateTime timestamp) {
+        return new LogKey(LogEventCodec.toEpochSecond(timestamp), timestamp.getNano(), Long.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+
+    public int getNano() {
+        return nano;
+    }
+
+    public long getIdMostSignificantBits() {
+        return idMostSignificantBits;
+    }
+
+    public long getIdLeastSignificantBits() {
+        return idLeastSignificantBits;
+    }
+
+    @Override
+    public int compareTo(LogKey other) {
+        int result = Long.compare(epochSecond, other.epochSecond);
+        if (result == 0) {
+            result = Integer.compare(nano, other.nano);
+        }
+        if (result == 0) {
+            result = Long.compare(idMostSignificantBits, other.idMostSignificantBits);
+        }
+        if (result == 0) {
+            result = Long.compare(idLeastSignificantBits, other.idLeastSignificantBits);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LogKey logKey = (LogKey) o;
+        return epochSecond == logKey.epochSecond
+                && nano == logKey.nano
+                && idMostSignificantBits == logKey.idMostSignificantBits
+                && idLeastSignificantBits == logKey.idLeastSignificantBits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(idMostSignificantBits ^ idLeastSignificantBits) * 31 + Long.hashCode(epochSecond);
+    }
+}
@@ -0,0 +1,104 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * A page request against a LogStore. Without a cursor, or with an "older" cursor, results come newest first;
+ * with a "newer" cursor they come oldest first, starting just after the cursor.
+ */
+public class LogQuery {
+    private final LogEvent.LogLevel level;
+    private final String loggerPrefix;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final LogCursor cursor;
+    private final int limit;
+
+    private final LogKey lowerBound;
+    private final boolean lowerInclusive;
+    private final LogKey upperBound;
+    private final boolean upperInclusive;
+
+    public LogQuery(LogEvent.LogLevel level, String loggerPrefix, LocalDateTime from, LocalDateTime to, LogCursor cursor, int limit) {
+        this.level = level;
+        this.loggerPrefix = loggerPrefix;
+        this.from = from;
+        this.to = to;
+        this.cursor = cursor;
+        this.limit = limit;
+
+        LogKey lower = from == null ? LogKey.MIN : LogKey.lowest(from);
+        boolean lowerInclusive = true;
+        LogKey upper = to == null ? LogKey.MAX : LogKey.lowest(to);
+        boolean upperInclusive = to == null;
+        if (cursor != null && cursor.isNewer() && cursor.getKey().compareTo(lower) >= 0) {
+            lower = cursor.getKey();
+            lowerInclusive = false;
+        } else if (cursor != null && !cursor.isNewer() && cursor.getKey().compareTo(upper) <= 0) {
+            upper = cursor.getKey();
+            upperInclusive = false;
+        }
+        this.lowerBound = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upperBound = upper;
+        this.upperInclusive = upperInclusive;
+    }
+
+    public boolean isAscending() {
+        return cursor != null && cursor.isNewer();
+    }
+
+    public boolean matches(LogEvent logEvent) {
+        return logEvent.isAtLeastLevel(level) && (loggerPrefix == null || logEvent.getLogger().startsWith(loggerPrefix));
+    }
+
+    public boolean isEmptyRange() {
+        int comparison = lowerBound.compareTo(upperBound);
+        return comparison > 0 || (comparison == 0 && !(lowerInclusive && upperInclusive));
+    }
+
+    public LogEvent.LogLevel getLevel() {
+        return level;
+    }
+
+    public String getLoggerPrefix() {
+        return loggerPrefix;
+    }
+
+    public byte[] getLoggerPrefixBytes() {
+        return loggerPrefix == null ? null : loggerPrefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public LogCursor getCursor() {
+        return cursor;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public LogKey getLowerBound() {
+        return lowerBound;
+    }
+
+    public boolean isLowerInclusive() {
+        return lowerInclusive;
+    }
+
+    public LogKey getUpperBound() {
+        return upperBound;
+    }
+
+    public boolean isUpperInclusive() {
+        return upperInclusive;
+    }
+}
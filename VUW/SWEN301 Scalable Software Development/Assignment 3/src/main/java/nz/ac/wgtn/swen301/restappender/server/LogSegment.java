@@ -0,0 +1,544 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * One append-only file of the segment store. The active segment is written through a FileChannel and read
+ * through one read-only mapping that is remapped at double the size whenever the records outgrow it;
+ * the file is extended to the mapped size, its zero-filled tail trimmed on close, seal and recovery.
+ * Once rolled it is sealed, memory-mapped read-only to its exact size and its channel closed.
+ * Every INDEX_INTERVAL records a sparse index block records the block's position and timestamp range,
+ * and a bloom filter over the record ids lets duplicate checks skip most segments. Ids that pass the bloom
+ * filter are confirmed against an id index: a hash set while the segment is active, compacted to a sorted
+ * array of (most, least significant bits) pairs once it is sealed.
+ * Record positions are also kept in LogKey order, overall and per level and per logger like IndexedLogList's
+ * indexes: in concurrent skip lists while the segment is active, compacted to sorted int[]s once it is sealed.
+ * All mutators are called with the store's lock held.
+ */
+class LogSegment {
+    static final int INDEX_INTERVAL = 64;
+    private static final long MIN_MAPPED_BYTES = 1024 * 1024;
+    private static final int BLOOM_HASHES = 5;
+
+    private final Path path;
+    private final long sequence;
+    private final long maxBytes;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private MappedByteBuffer activeMapped;
+    private long size;
+    private long count;
+    private long lastModified;
+
+    private int[] blockPositions = new int[16];
+    private long[] blockMinSeconds = new long[16];
+    private long[] blockMaxSeconds = new long[16];
+    private int blockCount;
+    private long minSecond = Long.MAX_VALUE;
+    private long maxSecond = Long.MIN_VALUE;
+    private ConcurrentSkipListMap<LogKey, Integer> activeIndex = new ConcurrentSkipListMap<>();
+    private int[] sortedPositions;
+    private Map<LogEvent.LogLevel, ConcurrentSkipListMap<LogKey, Integer>> activeLevelIndex = new EnumMap<>(LogEvent.LogLevel.class);
+    private ConcurrentSkipListMap<String, ConcurrentSkipListMap<LogKey, Integer>> activeLoggerIndex = new ConcurrentSkipListMap<>();
+    private Map<LogEvent.LogLevel, int[]> sortedLevelPositions;
+    private NavigableMap<String, int[]> sortedLoggerPositions;
+    private Set<UUID> activeIds = new HashSet<>();
+    private long[] sortedIds;
+    private final long[] bloom;
+
+    private LogSegment(Path path, long sequence, long maxBytes, FileChannel channel, int bloomBits) {
+        this.path = path;
+        this.sequence = sequence;
+        this.maxBytes = maxBytes;
+        this.channel = channel;
+        this.bloom = new long[Math.max(16, (bloomBits + 63) / 64)];
+        this.lastModified = System.currentTimeMillis();
+        // Filled up front so queries can read the map without the store's lock
+        for (LogEvent.LogLevel level : LogEvent.LogLevel.values()) {
+            activeLevelIndex.put(level, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    static LogSegment create(Path directory, long sequence, long maxBytes, int bloomBits) throws IOException {
+        Path path = directory.resolve(fileName(sequence));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new LogSegment(path, sequence, maxBytes, channel, bloomBits);
+    }
+
+    /**
+     * Rebuilds the index and bloom filter of an existing segment, truncating any torn or corrupt tail.
+     */
+    static LogSegment recover(Path path, long maxBytes, int bloomBits, boolean active) throws IOException {
+        long sequence = parseSequence(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LogSegment segment = new LogSegment(path, sequence, maxBytes, channel, bloomBits);
+        long fileSize = channel.size();
+        if (fileSize > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Segment too large: " + path);
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        int position = 0;
+        while (position < fileSize) {
+            int payloadLength = LogEventCodec.validate(buffer, position);
+            if (payloadLength < 0) {
+                break;
+            }
+            segment.index(buffer, position, position);
+            position += LogEventCodec.HEADER_BYTES + payloadLength;
+        }
+        if (position < fileSize) {
+            if (!isZeroFilled(buffer, position, (int) fileSize)) {
+                System.err.println("Truncating " + (fileSize - position) + " invalid bytes from " + path);
+            }
+            channel.truncate(position);
+            channel.force(true);
+        }
+        segment.size = position;
+        segment.lastModified = Files.getLastModifiedTime(path).toMillis();
+        if (active) {
+            channel.position(position);
+        } else {
+            segment.seal();
+        }
+        return segment;
+    }
+
+    private static boolean isZeroFilled(ByteBuffer buffer, int from, int to) {
+        for (int position = from; position < to; position++) {
+            if (buffer.get(position) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String fileName(long sequence) {
+        return String.format("%020d.log", sequence);
+    }
+
+    static long parseSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - ".log".length()));
+    }
+
+    /**
+     * Writes a buffer of whole encoded records, positioned at the first record.
+     */
+    void append(ByteBuffer records) throws IOException {
+        reopenIfClosed();
+        int start = records.position();
+        while (records.hasRemaining()) {
+            channel.write(records);
+        }
+        int position = (int) size;
+        for (int offset = start; offset < records.limit(); ) {
+            index(records, offset, position);
+            int length = LogEventCodec.recordLength(records, offset);
+            offset += length;
+            position += length;
+        }
+        size = position;
+        lastModified = System.currentTimeMillis();
+    }
+
+    private void reopenIfClosed() throws IOException {
+        if (!channel.isOpen()) {
+            // An interrupted writer closes the channel; reopen and drop anything it half wrote
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.truncate(size);
+            channel.position(size);
+        }
+    }
+
+    /**
+     * Returns the active segment's mapping, remapping at double its capacity (at most maxBytes, at least
+     * the current size) once the records outgrow it. Snapshots keep the mapping they were given.
+     */
+    private MappedByteBuffer activeMapping() throws IOException {
+        if (activeMapped == null || activeMapped.capacity() < size) {
+            reopenIfClosed();
+            long grown = activeMapped == null ? MIN_MAPPED_BYTES : 2L * activeMapped.capacity();
+            long capacity = Math.max(size, Math.min(maxBytes, grown));
+            if (channel.size() < capacity) {
+                // Positional write, so the channel's append position is unchanged
+                channel.write(ByteBuffer.allocate(1), capacity - 1);
+            }
+            activeMapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, capacity);
+        }
+        return activeMapped;
+    }
+
+    private void index(ByteBuffer records, int offset, int position) {
+        LogKey key = LogKey.read(records, offset);
+        long epochSecond = key.getEpochSecond();
+        long idMostSignificantBits = key.getIdMostSignificantBits();
+        long idLeastSignificantBits = key.getIdLeastSignificantBits();
+        minSecond = Math.min(minSecond, epochSecond);
+        maxSecond = Math.max(maxSecond, epochSecond);
+        activeIndex.put(key, position);
+        activeLevelIndex.get(LogEventCodec.level(records, offset)).put(key, position);
+        activeLoggerIndex.computeIfAbsent(LogEventCodec.logger(records, offset), logger -> new ConcurrentSkipListMap<>()).put(key, position);
+        activeIds.add(new UUID(idMostSignificantBits, idLeastSignificantBits));
+        if (count % INDEX_INTERVAL == 0) {
+            if (blockCount == blockPositions.length) {
+                int newLength = blockCount * 2;
+                blockPositions = Arrays.copyOf(blockPositions, newLength);
+                blockMinSeconds = Arrays.copyOf(blockMinSeconds, newLength);
+                blockMaxSeconds = Arrays.copyOf(blockMaxSeconds, newLength);
+            }
+            blockPositions[blockCount] = position;
+            blockMinSeconds[blockCount] = epochSecond;
+            blockMaxSeconds[blockCount] = epochSecond;
+            blockCount++;
+        } else {
+            int block = blockCount - 1;
+            blockMinSeconds[block] = Math.min(blockMinSeconds[block], epochSecond);
+            blockMaxSeconds[block] = Math.max(blockMaxSeconds[block], epochSecond);
+        }
+        long h1 = mix(idMostSignificantBits);
+        long h2 = mix(idLeastSignificantBits) | 1;
+        int bits = bloom.length * 64;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (int) Long.remainderUnsigned(h1 + i * h2, bits);
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+        count++;
+    }
+
+    boolean mightContain(long idMostSignificantBits, long idLeastSignificantBits) {
+        long h1 = mix(idMostSignificantBits);
+        long h2 = mix(idLeastSignificantBits) | 1;
+        int bits = bloom.length * 64;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (int) Long.remainderUnsigned(h1 + i * h2, bits);
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean containsId(long idMostSignificantBits, long idLeastSignificantBits) {
+        if (!mightContain(idMostSignificantBits, idLeastSignificantBits)) {
+            return false;
+        }
+        if (sortedIds == null) {
+            return activeIds.contains(new UUID(idMostSignificantBits, idLeastSignificantBits));
+        }
+        int low = 0;
+        int high = sortedIds.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Long.compare(sortedIds[2 * middle], idMostSignificantBits);
+            if (comparison == 0) {
+                comparison = Long.compare(sortedIds[2 * middle + 1], idLeastSignificantBits);
+            }
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    void force() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.force(false);
+        }
+    }
+
+    FileChannel channel() {
+        return channel;
+    }
+
+    void seal() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        reopenIfClosed();
+        channel.truncate(size);
+        channel.force(true);
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        activeMapped = null;
+        channel.close();
+        channel = null;
+        sortedPositions = toArray(activeIndex.values());
+        activeIndex = null;
+        sortedLevelPositions = new EnumMap<>(LogEvent.LogLevel.class);
+        activeLevelIndex.forEach((level, index) -> sortedLevelPositions.put(level, toArray(index.values())));
+        activeLevelIndex = null;
+        sortedLoggerPositions = new TreeMap<>();
+        activeLoggerIndex.forEach((logger, index) -> sortedLoggerPositions.put(logger, toArray(index.values())));
+        activeLoggerIndex = null;
+        // UUID.compareTo orders by the signed most then least significant bits, matching containsId's search
+        UUID[] ids = activeIds.toArray(new UUID[0]);
+        Arrays.sort(ids);
+        sortedIds = new long[ids.length * 2];
+        for (int i = 0; i < ids.length; i++) {
+            sortedIds[2 * i] = ids[i].getMostSignificantBits();
+            sortedIds[2 * i + 1] = ids[i].getLeastSignificantBits();
+        }
+        activeIds = null;
+    }
+
+    private static int[] toArray(Collection<Integer> positions) {
+        return positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.truncate(size);
+            channel.force(true);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        mapped = null;
+        activeMapped = null;
+        Files.deleteIfExists(path);
+    }
+
+    Snapshot snapshot() throws IOException {
+        ByteBuffer buffer = mapped != null ? mapped : size > 0 ? activeMapping() : ByteBuffer.allocate(0);
+        return new Snapshot(buffer, size, count, blockPositions, blockMinSeconds, blockMaxSeconds, blockCount,
+                minSecond, maxSecond, sortedPositions, sortedLevelPositions, sortedLoggerPositions,
+                activeIndex, activeLevelIndex, activeLoggerIndex);
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * A read view of the segment as of the moment it was taken; records appended afterwards are not visible.
+     */
+    static class Snapshot {
+        private final ByteBuffer buffer;
+        final long size;
+        final long count;
+        final int[] blockPositions;
+        final long[] blockMinSeconds;
+        final long[] blockMaxSeconds;
+        final int blockCount;
+        final long minSecond;
+        final long maxSecond;
+        private final int[] sortedPositions;
+        private final Map<LogEvent.LogLevel, int[]> sortedLevelPositions;
+        private final NavigableMap<String, int[]> sortedLoggerPositions;
+        private final NavigableMap<LogKey, Integer> activeIndex;
+        private final Map<LogEvent.LogLevel, ConcurrentSkipListMap<LogKey, Integer>> activeLevelIndex;
+        private final NavigableMap<String, ConcurrentSkipListMap<LogKey, Integer>> activeLoggerIndex;
+
+        private Snapshot(ByteBuffer buffer, long size, long count, int[] blockPositions, long[] blockMinSeconds, long[] blockMaxSeconds, int blockCount,
+                         long minSecond, long maxSecond, int[] sortedPositions, Map<LogEvent.LogLevel, int[]> sortedLevelPositions,
+                         NavigableMap<String, int[]> sortedLoggerPositions, NavigableMap<LogKey, Integer> activeIndex,
+                         Map<LogEvent.LogLevel, ConcurrentSkipListMap<LogKey, Integer>> activeLevelIndex,
+                         NavigableMap<String, ConcurrentSkipListMap<LogKey, Integer>> activeLoggerIndex) {
+            this.buffer = buffer;
+            this.size = size;
+            this.count = count;
+            this.blockPositions = blockPositions;
+            this.blockMinSeconds = blockMinSeconds;
+            this.blockMaxSeconds = blockMaxSeconds;
+            this.blockCount = blockCount;
+            this.minSecond = minSecond;
+            this.maxSecond = maxSecond;
+            this.sortedPositions = sortedPositions;
+            this.sortedLevelPositions = sortedLevelPositions;
+            this.sortedLoggerPositions = sortedLoggerPositions;
+            this.activeIndex = activeIndex;
+            this.activeLevelIndex = activeLevelIndex;
+            this.activeLoggerIndex = activeLoggerIndex;
+        }
+
+        /**
+         * Returns a view of the segment's mapping bounded to the snapshot's size. The mapping stays readable
+         * after the segment is deleted, so a snapshot taken before retention or clear() still reads its records.
+         */
+        ByteBuffer buffer() {
+            ByteBuffer view = buffer.duplicate();
+            view.limit((int) size);
+            return view;
+        }
+
+        int blockEnd(int block) {
+            return block + 1 < blockCount ? blockPositions[block + 1] : (int) size;
+        }
+
+        /**
+         * Iterates the candidate records within the query's key bounds, one iterator per index, each in the
+         * query's order. Like IndexedLogList, a logger prefix selects the matching loggers' indexes, otherwise
+         * a level other than ALL selects the indexes of the levels at least that severe; callers still check
+         * both filters on every hit.
+         */
+        List<Iterator<Hit>> iterators(ByteBuffer buffer, LogQuery query) {
+            List<Iterator<Hit>> iterators = new ArrayList<>();
+            String prefix = query.getLoggerPrefix();
+            if (sortedPositions == null) {
+                if (prefix != null) {
+                    activeLoggerIndex.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()
+                            .forEach(index -> iterators.add(iterator(buffer, index, query)));
+                } else if (query.getLevel() == LogEvent.LogLevel.ALL) {
+                    iterators.add(iterator(buffer, activeIndex, query));
+                } else {
+                    activeLevelIndex.forEach((level, index) -> {
+                        if (level.isAtLeastLevel(query.getLevel())) {
+                            iterators.add(iterator(buffer, index, query));
+                        }
+                    });
+                }
+            } else {
+                if (prefix != null) {
+                    sortedLoggerPositions.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()
+                            .forEach(positions -> iterators.add(iterator(buffer, positions, query)));
+                } else if (query.getLevel() == LogEvent.LogLevel.ALL) {
+                    iterators.add(iterator(buffer, sortedPositions, query));
+                } else {
+                    sortedLevelPositions.forEach((level, positions) -> {
+                        if (level.isAtLeastLevel(query.getLevel())) {
+                            iterators.add(iterator(buffer, positions, query));
+                        }
+                    });
+                }
+            }
+            return iterators;
+        }
+
+        private Iterator<Hit> iterator(ByteBuffer buffer, NavigableMap<LogKey, Integer> index, LogQuery query) {
+            NavigableMap<LogKey, Integer> range = index.subMap(
+                    query.getLowerBound(), query.isLowerInclusive(), query.getUpperBound(), query.isUpperInclusive());
+            Iterator<Map.Entry<LogKey, Integer>> entries =
+                    (query.isAscending() ? range : range.descendingMap()).entrySet().iterator();
+            return new Iterator<>() {
+                private Hit next = advance();
+
+                private Hit advance() {
+                    while (entries.hasNext()) {
+                        Map.Entry<LogKey, Integer> entry = entries.next();
+                        // Skip records appended after this snapshot was taken
+                        if (entry.getValue() < size) {
+                            return new Hit(entry.getKey(), buffer, entry.getValue());
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Hit next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Hit hit = next;
+                    next = advance();
+                    return hit;
+                }
+            };
+        }
+
+        private Iterator<Hit> iterator(ByteBuffer buffer, int[] positions, LogQuery query) {
+            int start = search(buffer, positions, query.getLowerBound(), query.isLowerInclusive());
+            int end = search(buffer, positions, query.getUpperBound(), !query.isUpperInclusive());
+            boolean ascending = query.isAscending();
+            return new Iterator<>() {
+                private int index = ascending ? start : end - 1;
+
+                @Override
+                public boolean hasNext() {
+                    return ascending ? index < end : index >= start;
+                }
+
+                @Override
+                public Hit next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int position = positions[ascending ? index++ : index--];
+                    return new Hit(LogKey.read(buffer, position), buffer, position);
+                }
+            };
+        }
+
+        /**
+         * Returns the first index whose key is at least (inclusive) or above (exclusive) the given key.
+         */
+        private static int search(ByteBuffer buffer, int[] positions, LogKey key, boolean inclusive) {
+            int low = 0;
+            int high = positions.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int comparison = LogKey.read(buffer, positions[middle]).compareTo(key);
+                if (comparison < 0 || (comparison == 0 && !inclusive)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    static class Hit {
+        final LogKey key;
+        final ByteBuffer buffer;
+        final int position;
+
+        private Hit(LogKey key, ByteBuffer buffer, int position) {
+            this.key = key;
+            this.buffer = buffer;
+            this.position = position;
+        }
+    }
+}
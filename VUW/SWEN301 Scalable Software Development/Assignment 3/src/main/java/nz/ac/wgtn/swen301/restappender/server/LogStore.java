@@ -0,0 +1,34 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.io.Closeable;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public interface LogStore extends Closeable {
+
+    void append(List<LogEvent> logEvents);
+
+    boolean containsId(UUID id);
+
+    void forEach(Consumer<LogEvent> action);
+
+    /**
+     * Visits the events with a timestamp in [from, to), in the order they were appended.
+     * A null bound is unbounded.
+     */
+    void scan(LocalDateTime from, LocalDateTime to, Consumer<LogEvent> action);
+
+    /**
+     * Returns up to query.getLimit() matching events, newest first, or oldest first for a "newer" cursor.
+     */
+    List<LogEvent> query(LogQuery query);
+
+    long size();
+
+    void clear();
+
+    @Override
+    void close();
+}
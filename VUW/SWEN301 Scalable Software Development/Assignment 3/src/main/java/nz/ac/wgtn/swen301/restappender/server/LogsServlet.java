@@ -1,19 +1,34 @@
 package nz.ac.wgtn.swen301.restappender.server;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Comparator;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
 public class LogsServlet extends HttpServlet {
+    /**
+     * Largest page GET /logs returns, so one request cannot decode the whole store into the heap.
+     * A larger limit is clamped to it; the remaining results are reached through X-Next-Cursor.
+     */
+    public static final int MAX_LIMIT = 10_000;
     private static final Gson GSON = new GsonBuilder()
             .registerTypeAdapter(LogEvent.class, LogEvent.JSON_SERIALIZER)
             .registerTypeAdapter(LogEvent.class, LogEvent.JSON_DESERIALIZER)
+            .disableHtmlEscaping()
             .create();
 
     @Override
@@ -37,41 +52,143 @@ public class LogsServlet extends HttpServlet {
             if (limit <= 0) {
                 throw new IllegalArgumentException();
             }
+            limit = Math.min(limit, MAX_LIMIT);
         } catch (IllegalArgumentException e) {
             resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid limit parameter");
             return;
         }
 
-        List<LogEvent> results = Persistency.DB.stream()
-                .filter(log -> log.isAtLeastLevel(level))
-                .sorted(Comparator.comparing(LogEvent::getTimestamp, Comparator.reverseOrder()))
-                .limit(limit)
-                .collect(Collectors.toList());
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            from = parseTimestamp(req.getParameter("from"));
+            to = parseTimestamp(req.getParameter("to"));
+        } catch (DateTimeParseException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid from and/or to parameter");
+            return;
+        }
+        LogCursor cursor = null;
+        String cursorStr = req.getParameter("cursor");
+        if (cursorStr != null) {
+            try {
+                cursor = LogCursor.decode(cursorStr);
+            } catch (IllegalArgumentException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor parameter");
+                return;
+            }
+        }
+
+        // One extra result tells whether there is another page beyond this one
+        LogQuery query = new LogQuery(level, req.getParameter("logger"), from, to, cursor, limit + 1);
+        List<LogEvent> results = Persistency.STORE.query(query);
+        boolean more = results.size() > limit;
+        if (more) {
+            results = results.subList(0, limit);
+        }
+        if (query.isAscending()) {
+            Collections.reverse(results);
+        }
+        if (!results.isEmpty()) {
+            boolean hasOlder = query.isAscending() || more;
+            boolean hasNewer = query.isAscending() ? more : cursor != null;
+            if (hasOlder) {
+                resp.setHeader("X-Next-Cursor", new LogCursor(LogKey.of(results.get(results.size() - 1)), false).encode());
+            }
+            if (hasNewer) {
+                resp.setHeader("X-Prev-Cursor", new LogCursor(LogKey.of(results.get(0)), true).encode());
+            }
+        }
 
-        JsonArray jsonArray = GSON.toJsonTree(results).getAsJsonArray();
         resp.setContentType("application/json");
-        resp.getWriter().write(jsonArray.toString());
+        boolean gzip = acceptsGzip(req);
+        resp.setHeader("Vary", "Accept-Encoding"); // the body depends on the request's Accept-Encoding
+        if (gzip) {
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+        try (Writer out = gzip ? new OutputStreamWriter(new GZIPOutputStream(resp.getOutputStream()), resp.getCharacterEncoding()) : resp.getWriter();
+             JsonWriter jsonWriter = new JsonWriter(out)) {
+            jsonWriter.beginArray();
+            for (LogEvent logEvent : results) {
+                GSON.toJson(logEvent, LogEvent.class, jsonWriter);
+            }
+            jsonWriter.endArray();
+        }
+    }
+
+    private static LocalDateTime parseTimestamp(String timestamp) throws DateTimeParseException {
+        return timestamp == null ? null : LocalDateTime.parse(timestamp, LogEvent.TIMESTAMP_FORMATTER);
+    }
+
+    /**
+     * Whether Accept-Encoding allows gzip with a non-zero q-value, either by name or through "*".
+     */
+    static boolean acceptsGzip(HttpServletRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzipQuality = -1;
+        double wildcardQuality = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim().toLowerCase();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0; // an unreadable weight is not taken as acceptance
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzipQuality = Math.max(gzipQuality, quality);
+            } else if (name.equals("*")) {
+                wildcardQuality = Math.max(wildcardQuality, quality);
+            }
+        }
+        return (gzipQuality >= 0 ? gzipQuality : wildcardQuality) > 0;
     }
 
     @Override
     public void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        LogEvent logEvent;
+        List<LogEvent> logEvents = new ArrayList<>();
         try {
-            logEvent = GSON.fromJson(req.getReader(), LogEvent.class);
-        } catch (JsonParseException e) {
+            JsonElement json = JsonParser.parseReader(req.getReader());
+            if (json.isJsonArray()) {
+                for (JsonElement element : json.getAsJsonArray()) {
+                    logEvents.add(GSON.fromJson(element, LogEvent.class));
+                }
+            } else if (json.isJsonObject()) {
+                logEvents.add(GSON.fromJson(json, LogEvent.class));
+            } else {
+                throw new JsonParseException("Expected a log event or an array of log events");
+            }
+        } catch (JsonParseException | IllegalStateException e) {
             resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
             return;
         }
-        if (Persistency.DB.stream().anyMatch(entry -> entry.getId().equals(logEvent.getId()))) {
-            resp.sendError(HttpServletResponse.SC_CONFLICT, "A log event with this id already exists");
-            return;
+        Set<UUID> ids = new HashSet<>();
+        for (LogEvent logEvent : logEvents) {
+            if (!ids.add(logEvent.getId())) {
+                resp.sendError(HttpServletResponse.SC_CONFLICT, "Duplicate log event ids in request");
+                return;
+            }
+        }
+        synchronized (Persistency.STORE) {
+            if (ids.stream().anyMatch(Persistency.STORE::containsId)) {
+                resp.sendError(HttpServletResponse.SC_CONFLICT, "A log event with this id already exists");
+                return;
+            }
+            Persistency.STORE.append(logEvents);
         }
-        Persistency.DB.add(logEvent);
         resp.setStatus(HttpServletResponse.SC_CREATED);
     }
 
     @Override
     public void doDelete(HttpServletRequest req, HttpServletResponse resp) {
-        Persistency.DB.clear();
+        Persistency.STORE.clear();
     }
 }
@@ -0,0 +1,63 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public class MemoryLogStore implements LogStore {
+    private final IndexedLogList logs;
+
+    public MemoryLogStore(IndexedLogList logs) {
+        this.logs = logs;
+    }
+
+    @Override
+    public void append(List<LogEvent> logEvents) {
+        logs.addAll(logEvents);
+    }
+
+    @Override
+    public boolean containsId(UUID id) {
+        return logs.containsId(id);
+    }
+
+    @Override
+    public void forEach(Consumer<LogEvent> action) {
+        synchronized (logs) {
+            logs.forEach(action);
+        }
+    }
+
+    @Override
+    public void scan(LocalDateTime from, LocalDateTime to, Consumer<LogEvent> action) {
+        synchronized (logs) {
+            for (LogEvent logEvent : logs) {
+                LocalDateTime timestamp = logEvent.getTimestamp();
+                if ((from == null || !timestamp.isBefore(from)) && (to == null || timestamp.isBefore(to))) {
+                    action.accept(logEvent);
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<LogEvent> query(LogQuery query) {
+        return logs.query(query);
+    }
+
+    @Override
+    public long size() {
+        return logs.size();
+    }
+
+    @Override
+    public void clear() {
+        logs.clear();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
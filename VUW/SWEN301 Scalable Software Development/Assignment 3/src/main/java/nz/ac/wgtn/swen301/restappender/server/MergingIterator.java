@@ -0,0 +1,52 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges iterators that are each already sorted by the comparator.
+ */
+class MergingIterator<T> implements Iterator<T> {
+    private final PriorityQueue<Head<T>> heads;
+
+    MergingIterator(List<? extends Iterator<T>> sources, Comparator<? super T> comparator) {
+        heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> comparator.compare(a.value, b.value));
+        for (Iterator<T> source : sources) {
+            if (source.hasNext()) {
+                heads.add(new Head<>(source.next(), source));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        Head<T> head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        T value = head.value;
+        if (head.source.hasNext()) {
+            head.value = head.source.next();
+            heads.add(head);
+        }
+        return value;
+    }
+
+    private static class Head<T> {
+        private T value;
+        private final Iterator<T> source;
+
+        private Head(T value, Iterator<T> source) {
+            this.value = value;
+            this.source = source;
+        }
+    }
+}
@@ -1,9 +1,39 @@
 package nz.ac.wgtn.swen301.restappender.server;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class Persistency {
-    public static final List<LogEvent> DB = Collections.synchronizedList(new ArrayList<>());
+    public static final String STORAGE_DIR_PROPERTY = "restappender.storage.dir";
+    public static final String SEGMENT_BYTES_PROPERTY = "restappender.storage.segmentBytes";
+    public static final String RETENTION_BYTES_PROPERTY = "restappender.storage.retentionBytes";
+    public static final String RETENTION_HOURS_PROPERTY = "restappender.storage.retentionHours";
+    public static final String FSYNC_MILLIS_PROPERTY = "restappender.storage.fsyncMillis";
+
+    // Backs the store unless a storage directory is configured
+    private static final IndexedLogList INDEXED_DB = new IndexedLogList();
+    public static final List<LogEvent> DB = INDEXED_DB;
+    public static final LogStore STORE = createStore();
+
+    private static LogStore createStore() {
+        String directory = System.getProperty(STORAGE_DIR_PROPERTY);
+        if (directory == null) {
+            return new MemoryLogStore(INDEXED_DB);
+        }
+        try {
+            SegmentLogStore store = new SegmentLogStore(
+                    Paths.get(directory),
+                    Long.getLong(SEGMENT_BYTES_PROPERTY, SegmentLogStore.DEFAULT_SEGMENT_BYTES),
+                    Long.getLong(RETENTION_BYTES_PROPERTY, 0),
+                    TimeUnit.HOURS.toMillis(Long.getLong(RETENTION_HOURS_PROPERTY, 0)),
+                    Long.getLong(FSYNC_MILLIS_PROPERTY, SegmentLogStore.DEFAULT_FSYNC_INTERVAL_MILLIS));
+            Runtime.getRuntime().addShutdownHook(new Thread(store::close));
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
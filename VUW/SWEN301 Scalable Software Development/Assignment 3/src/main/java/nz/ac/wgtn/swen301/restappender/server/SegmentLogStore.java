@@ -0,0 +1,334 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable log store made of append-only segment files in one directory.
+ * Appends are written straight to the active segment and fsynced in groups every fsyncIntervalMillis
+ * (or on every append when it is 0). Reads go through memory-mapped segments, skipping index blocks
+ * whose timestamp range cannot match. Whole segments are dropped once the store exceeds
+ * retentionBytes or a sealed segment is older than retentionMillis (either limit is disabled when 0).
+ */
+public class SegmentLogStore implements LogStore {
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 100;
+    private static final int BLOOM_BITS_PER_RECORD = 10;
+    private static final int ESTIMATED_RECORD_BYTES = 128;
+    private static final long RETENTION_CHECK_MILLIS = 60_000;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final long fsyncIntervalMillis;
+    private final int bloomBits;
+    private final List<LogSegment> segments = new ArrayList<>();
+    private final ScheduledExecutorService background;
+    private LogSegment active;
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(64 * 1024);
+    private boolean dirty;
+    private boolean closed;
+
+    public SegmentLogStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, 0, 0, DEFAULT_FSYNC_INTERVAL_MILLIS);
+    }
+
+    public SegmentLogStore(Path directory, long maxSegmentBytes, long retentionBytes, long retentionMillis, long fsyncIntervalMillis) throws IOException {
+        if (maxSegmentBytes <= 0 || maxSegmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxSegmentBytes must be between 1 and " + Integer.MAX_VALUE);
+        }
+        if (retentionBytes < 0 || retentionMillis < 0 || fsyncIntervalMillis < 0) {
+            throw new IllegalArgumentException("retention and fsync settings must be non-negative");
+        }
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.bloomBits = (int) Math.min(Integer.MAX_VALUE - 63, maxSegmentBytes / ESTIMATED_RECORD_BYTES * BLOOM_BITS_PER_RECORD);
+
+        Files.createDirectories(directory);
+        recover();
+
+        background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SegmentLogStore-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncIntervalMillis > 0) {
+            background.scheduleWithFixedDelay(this::sync, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (retentionBytes > 0 || retentionMillis > 0) {
+            background.scheduleWithFixedDelay(this::enforceRetention, RETENTION_CHECK_MILLIS, RETENTION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().matches("\\d{20}\\.log"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            segments.add(LogSegment.recover(files.get(i), maxSegmentBytes, bloomBits, i == files.size() - 1));
+        }
+        if (segments.isEmpty()) {
+            active = LogSegment.create(directory, 0, maxSegmentBytes, bloomBits);
+            segments.add(active);
+        } else {
+            active = segments.get(segments.size() - 1);
+            if (active.size() >= maxSegmentBytes) {
+                roll();
+            }
+        }
+        enforceRetention();
+    }
+
+    @Override
+    public synchronized void append(List<LogEvent> logEvents) {
+        ensureOpen();
+        try {
+            for (LogEvent logEvent : logEvents) {
+                int start = encodeBuffer.position();
+                encodeBuffer = LogEventCodec.encode(logEvent, encodeBuffer);
+                int end = encodeBuffer.position();
+                if (active.size() + end > maxSegmentBytes && active.size() + start > 0) {
+                    // The new record would overflow the active segment, so write what came before it and roll
+                    encodeBuffer.flip().limit(start);
+                    if (start > 0) {
+                        active.append(encodeBuffer);
+                    }
+                    roll();
+                    encodeBuffer.limit(end).position(start);
+                    encodeBuffer.compact();
+                }
+            }
+            encodeBuffer.flip();
+            if (encodeBuffer.hasRemaining()) {
+                active.append(encodeBuffer);
+            }
+            if (fsyncIntervalMillis == 0) {
+                active.force();
+            } else {
+                dirty = true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            encodeBuffer.clear();
+        }
+    }
+
+    private void roll() throws IOException {
+        active.seal();
+        active = LogSegment.create(directory, active.sequence() + 1, maxSegmentBytes, bloomBits);
+        segments.add(active);
+        enforceRetention();
+    }
+
+    @Override
+    public synchronized boolean containsId(UUID id) {
+        long mostSignificantBits = id.getMostSignificantBits();
+        long leastSignificantBits = id.getLeastSignificantBits();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (segments.get(i).containsId(mostSignificantBits, leastSignificantBits)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEach(Consumer<LogEvent> action) {
+        scan(null, null, action);
+    }
+
+    @Override
+    public void scan(LocalDateTime from, LocalDateTime to, Consumer<LogEvent> action) {
+        long fromSecond = from == null ? Long.MIN_VALUE : LogEventCodec.toEpochSecond(from);
+        long toSecond = to == null ? Long.MAX_VALUE : LogEventCodec.toEpochSecond(to);
+        for (LogSegment.Snapshot snapshot : snapshots()) {
+            ByteBuffer buffer = null;
+            for (int block = 0; block < snapshot.blockCount; block++) {
+                if (snapshot.blockMaxSeconds[block] < fromSecond || snapshot.blockMinSeconds[block] > toSecond) {
+                    continue;
+                }
+                if (buffer == null) {
+                    buffer = snapshot.buffer();
+                }
+                int end = snapshot.blockEnd(block);
+                for (int position = snapshot.blockPositions[block]; position < end; position += LogEventCodec.recordLength(buffer, position)) {
+                    long second = LogEventCodec.epochSecond(buffer, position);
+                    if (second < fromSecond || second > toSecond) {
+                        continue;
+                    }
+                    LogEvent logEvent = LogEventCodec.decode(buffer, position);
+                    LocalDateTime timestamp = logEvent.getTimestamp();
+                    if ((from == null || !timestamp.isBefore(from)) && (to == null || timestamp.isBefore(to))) {
+                        action.accept(logEvent);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<LogEvent> query(LogQuery query) {
+        List<LogEvent> results = new ArrayList<>();
+        if (query.isEmptyRange() || query.getLimit() <= 0) {
+            return results;
+        }
+        long lowerSecond = query.getLowerBound().getEpochSecond();
+        long upperSecond = query.getUpperBound().getEpochSecond();
+        List<Iterator<LogSegment.Hit>> sources = new ArrayList<>();
+        for (LogSegment.Snapshot snapshot : snapshots()) {
+            if (snapshot.count == 0 || snapshot.maxSecond < lowerSecond || snapshot.minSecond > upperSecond) {
+                continue;
+            }
+            sources.addAll(snapshot.iterators(snapshot.buffer(), query));
+        }
+        Comparator<LogSegment.Hit> order = Comparator.comparing(hit -> hit.key);
+        Iterator<LogSegment.Hit> merged = new MergingIterator<>(sources, query.isAscending() ? order : order.reversed());
+        byte[] loggerPrefix = query.getLoggerPrefixBytes();
+        // The segment indexes narrow the candidates; level and logger are rechecked in the mapped record,
+        // so only matches are decoded
+        while (merged.hasNext() && results.size() < query.getLimit()) {
+            LogSegment.Hit hit = merged.next();
+            if (LogEventCodec.level(hit.buffer, hit.position).isAtLeastLevel(query.getLevel())
+                    && (loggerPrefix == null || LogEventCodec.loggerStartsWith(hit.buffer, hit.position, loggerPrefix))) {
+                results.add(LogEventCodec.decode(hit.buffer, hit.position));
+            }
+        }
+        return results;
+    }
+
+    private synchronized List<LogSegment.Snapshot> snapshots() {
+        ensureOpen();
+        List<LogSegment.Snapshot> snapshots = new ArrayList<>(segments.size());
+        try {
+            for (LogSegment segment : segments) {
+                snapshots.add(segment.snapshot());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return snapshots;
+    }
+
+    @Override
+    public synchronized long size() {
+        return segments.stream().mapToLong(LogSegment::count).sum();
+    }
+
+    public synchronized long sizeInBytes() {
+        return segments.stream().mapToLong(LogSegment::size).sum();
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        ensureOpen();
+        try {
+            long nextSequence = active.sequence() + 1;
+            for (LogSegment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            active = LogSegment.create(directory, nextSequence, maxSegmentBytes, bloomBits);
+            segments.add(active);
+            dirty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void sync() {
+        FileChannel channel;
+        synchronized (this) {
+            if (!dirty || closed) {
+                return;
+            }
+            dirty = false;
+            channel = active.channel();
+        }
+        try {
+            // Forced outside the lock so appends can continue; a rolled segment was already forced when sealed
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // Sealed or closed concurrently
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void enforceRetention() {
+        long now = System.currentTimeMillis();
+        long totalBytes = segments.stream().mapToLong(LogSegment::size).sum();
+        while (segments.size() > 1) {
+            LogSegment oldest = segments.get(0);
+            boolean tooLarge = retentionBytes > 0 && totalBytes > retentionBytes;
+            boolean tooOld = retentionMillis > 0 && oldest.lastModified() < now - retentionMillis;
+            if (!tooLarge && !tooOld) {
+                break;
+            }
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                e.printStackTrace();
+                break;
+            }
+            segments.remove(0);
+            totalBytes -= oldest.size();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Store is closed");
+        }
+    }
+
+    @Override
+    public void close() {
+        // Not shutdownNow(): interrupting a thread inside FileChannel.force() closes the channel
+        background.shutdown();
+        try {
+            background.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                active.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Map;
 
 public class StatsCSVServlet extends HttpServlet {
@@ -12,18 +13,17 @@ public class StatsCSVServlet extends HttpServlet {
     @Override
     public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         Map<String, int[]> stats = StatsUtils.calculateLogStats();
-        StringBuilder csvBuilder = new StringBuilder();
-        csvBuilder.append(HEADER_ROW);
+        resp.setContentType("text/csv");
+        resp.setCharacterEncoding("UTF-8");
+        PrintWriter writer = resp.getWriter();
+        writer.write(HEADER_ROW);
         for (Map.Entry<String, int[]> loggerEntry : stats.entrySet()) {
-            csvBuilder.append(loggerEntry.getKey());
+            writer.write(loggerEntry.getKey());
             for (int count : loggerEntry.getValue()) {
-                csvBuilder.append("\t").append(count);
+                writer.write('\t');
+                writer.print(count);
             }
-            csvBuilder.append("\n");
+            writer.write('\n');
         }
-
-        resp.setContentType("text/csv");
-        resp.setCharacterEncoding("UTF-8");
-        resp.getWriter().write(csvBuilder.toString());
     }
 }
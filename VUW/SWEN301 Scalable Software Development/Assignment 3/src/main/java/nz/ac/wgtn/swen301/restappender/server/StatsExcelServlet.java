@@ -1,7 +1,7 @@
 package nz.ac.wgtn.swen301.restappender.server;
 
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -10,12 +10,14 @@ import java.io.IOException;
 import java.util.Map;
 
 public class StatsExcelServlet extends HttpServlet {
+    // Rows beyond this window are flushed to a temporary file, so memory stays bounded however many loggers there are
+    private static final int ROW_WINDOW_SIZE = 100;
     private static final String[] HEADER_ROW = new String[]{"logger", "ALL", "TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL", "OFF"};
 
     @Override
     public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         Map<String, int[]> stats = StatsUtils.calculateLogStats();
-        Workbook workbook = new XSSFWorkbook();
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW_SIZE);
         Sheet sheet = workbook.createSheet("stats");
         Row headerRow = sheet.createRow(0);
         for (int i = 0; i < HEADER_ROW.length; i++) {
@@ -33,7 +35,11 @@ public class StatsExcelServlet extends HttpServlet {
 
         resp.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
         resp.setCharacterEncoding("UTF-8");
-        workbook.write(resp.getOutputStream());
-        workbook.close();
+        try {
+            workbook.write(resp.getOutputStream());
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
     }
 }
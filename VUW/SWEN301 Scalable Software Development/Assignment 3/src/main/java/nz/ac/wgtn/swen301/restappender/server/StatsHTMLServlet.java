@@ -4,37 +4,42 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Map;
 
 public class StatsHTMLServlet extends HttpServlet {
     @Override
     public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         Map<String, int[]> stats = StatsUtils.calculateLogStats();
-        StringBuilder htmlBuilder = new StringBuilder();
-        htmlBuilder.append("<!DOCTYPE html>");
-        htmlBuilder.append("<html>");
-        htmlBuilder.append("<head><title>Log Statistics</title></head>");
-        htmlBuilder.append("<body>");
-        htmlBuilder.append("<table border=\"1\">");
-        htmlBuilder.append("<tr><th>logger</th>");
+        resp.setContentType("text/html");
+        resp.setCharacterEncoding("UTF-8");
+        PrintWriter writer = resp.getWriter();
+        writer.write("<!DOCTYPE html>");
+        writer.write("<html>");
+        writer.write("<head><title>Log Statistics</title></head>");
+        writer.write("<body>");
+        writer.write("<table border=\"1\">");
+        writer.write("<tr><th>logger</th>");
         for (LogEvent.LogLevel level : LogEvent.LogLevel.values()) {
-            htmlBuilder.append("<th>").append(level.name()).append("</th>");
+            writer.write("<th>");
+            writer.write(level.name());
+            writer.write("</th>");
         }
-        htmlBuilder.append("</tr>");
+        writer.write("</tr>");
         for (Map.Entry<String, int[]> loggerEntry : stats.entrySet()) {
-            htmlBuilder.append("<tr>");
-            htmlBuilder.append("<td>").append(loggerEntry.getKey()).append("</td>");
+            writer.write("<tr>");
+            writer.write("<td>");
+            writer.write(loggerEntry.getKey());
+            writer.write("</td>");
             for (int count : loggerEntry.getValue()) {
-                htmlBuilder.append("<td>").append(count).append("</td>");
+                writer.write("<td>");
+                writer.print(count);
+                writer.write("</td>");
             }
-            htmlBuilder.append("</tr>");
+            writer.write("</tr>");
         }
-        htmlBuilder.append("</table>");
-        htmlBuilder.append("</body>");
-        htmlBuilder.append("</html>");
-
-        resp.setContentType("text/html");
-        resp.setCharacterEncoding("UTF-8");
-        resp.getWriter().write(htmlBuilder.toString());
+        writer.write("</table>");
+        writer.write("</body>");
+        writer.write("</html>");
     }
 }
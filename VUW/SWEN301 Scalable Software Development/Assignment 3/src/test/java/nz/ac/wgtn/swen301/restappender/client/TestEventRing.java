@@ -0,0 +1,114 @@
+package nz.ac.wgtn.swen301.restappender.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestEventRing {
+
+    @Test
+    public void testCapacityRoundsUpToPowerOfTwo() {
+        assertEquals(1, new EventRing<Integer>(1).capacity());
+        assertEquals(8, new EventRing<Integer>(5).capacity());
+        assertEquals(8, new EventRing<Integer>(8).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new EventRing<Integer>(0));
+    }
+
+    @Test
+    public void testEmpty() {
+        EventRing<Integer> ring = new EventRing<>(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        assertTrue(ring.offer(1));
+        assertEquals(1, ring.poll());
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testFull() {
+        EventRing<Integer> ring = new EventRing<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertEquals(4, ring.size());
+        assertFalse(ring.offer(4));
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4));
+        assertFalse(ring.offer(5));
+    }
+
+    @Test
+    public void testWraparound() {
+        EventRing<Integer> ring = new EventRing<>(4);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 100; round++) {
+            // Uneven offers and polls so the head and tail cross the end of the array at different points
+            for (int i = 0; i < 3 && ring.offer(next); i++) {
+                next++;
+            }
+            for (int i = 0; i < 2; i++) {
+                Integer element = ring.poll();
+                assertNotNull(element);
+                assertEquals(expected++, element);
+            }
+        }
+        Integer element;
+        while ((element = ring.poll()) != null) {
+            assertEquals(expected++, element);
+        }
+        assertEquals(next, expected);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws InterruptedException {
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 50_000;
+        EventRing<Integer> ring = new EventRing<>(64);
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                while (consumed.get() < producers * perProducer) {
+                    Integer element = ring.poll();
+                    if (element == null) {
+                        Thread.yield();
+                    } else {
+                        if (!seen.add(element)) {
+                            duplicates.incrementAndGet();
+                        }
+                        consumed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(30_000);
+        }
+        assertEquals(0, duplicates.get());
+        assertEquals(producers * perProducer, seen.size());
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,201 @@
+package nz.ac.wgtn.swen301.restappender.client;
+
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRestAppender {
+    private static final Logger LOGGER = Logger.getLogger(TestRestAppender.class);
+
+    private HttpServer server;
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    // Maps the request number (from 0) to the status the server answers with
+    private volatile IntUnaryOperator status = request -> 201;
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private RestAppender appender;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/logs", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        gate.countDown();
+        if (appender != null) {
+            appender.close();
+        }
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            String json = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            gate.await(10, TimeUnit.SECONDS);
+            int code = status.applyAsInt(requests.getAndIncrement());
+            if (code / 100 == 2) {
+                batchSizes.add(JsonParser.parseString(json).getAsJsonArray().size());
+            }
+            exchange.sendResponseHeaders(code, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private RestAppender createAppender() {
+        RestAppender restAppender = new RestAppender();
+        restAppender.setUrl("http://localhost:" + server.getAddress().getPort() + "/logs");
+        restAppender.setRetryBackoffMillis(10);
+        restAppender.setMaxRetryBackoffMillis(50);
+        restAppender.setCloseTimeoutMillis(200);
+        return restAppender;
+    }
+
+    private static void log(RestAppender restAppender, int count) {
+        for (int i = 0; i < count; i++) {
+            restAppender.doAppend(new LoggingEvent(Logger.class.getName(), LOGGER, Level.INFO, "message " + i, null));
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testFlushOnBatchSize() throws InterruptedException {
+        appender = createAppender();
+        appender.setBatchSize(5);
+        appender.setLingerMillis(60_000);
+        appender.activateOptions();
+        log(appender, 5);
+        await(() -> appender.getSentCount() == 5);
+        assertEquals(List.of(5), batchSizes);
+        assertEquals(0, appender.getDroppedCount());
+    }
+
+    @Test
+    public void testFlushOnLinger() throws InterruptedException {
+        appender = createAppender();
+        appender.setBatchSize(100);
+        appender.setLingerMillis(50);
+        appender.activateOptions();
+        log(appender, 3);
+        await(() -> appender.getSentCount() == 3);
+        assertEquals(List.of(3), batchSizes);
+    }
+
+    @Test
+    public void testRetryWithBackoff() throws InterruptedException {
+        status = request -> request < 2 ? 503 : 201;
+        appender = createAppender();
+        appender.setBatchSize(4);
+        appender.setMaxRetries(5);
+        appender.activateOptions();
+        long start = System.nanoTime();
+        log(appender, 4);
+        await(() -> appender.getSentCount() == 4);
+        assertEquals(2, appender.getRetryCount());
+        assertEquals(0, appender.getDroppedCount());
+        assertEquals(3, requests.get());
+        // Backoffs of at least 5 ms and 10 ms (half the base delay, doubled) came between the attempts
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15));
+    }
+
+    @Test
+    public void testDroppedWhenRetriesRunOut() throws InterruptedException {
+        status = request -> 503;
+        appender = createAppender();
+        appender.setBatchSize(3);
+        appender.setMaxRetries(2);
+        appender.activateOptions();
+        log(appender, 3);
+        await(() -> appender.getDroppedCount() == 3);
+        assertEquals(2, appender.getRetryCount());
+        assertEquals(3, requests.get());
+        assertEquals(0, appender.getSentCount());
+    }
+
+    @Test
+    public void testDroppedOnClientError() throws InterruptedException {
+        status = request -> 400;
+        appender = createAppender();
+        appender.setBatchSize(3);
+        appender.activateOptions();
+        log(appender, 3);
+        await(() -> appender.getDroppedCount() == 3);
+        assertEquals(0, appender.getRetryCount());
+    }
+
+    @Test
+    public void testDroppedOnOverflow() throws InterruptedException {
+        gate = new CountDownLatch(1); // hold every request until released
+        appender = createAppender();
+        appender.setBatchSize(1);
+        appender.setMaxInFlightBatches(1);
+        appender.setBufferSize(2);
+        appender.activateOptions();
+        log(appender, 1);
+        await(() -> requests.get() == 0 && appender.getBufferedCount() == 0);
+        log(appender, 1); // taken by the flusher, which then waits for the in-flight batch
+        await(() -> appender.getBufferedCount() == 0);
+        log(appender, 5); // two fit in the ring, the rest are dropped
+        assertEquals(3, appender.getDroppedCount());
+        gate.countDown();
+        await(() -> appender.getSentCount() == 4);
+        assertEquals(3, appender.getDroppedCount());
+    }
+
+    @Test
+    public void testCloseCountsDiscardedRetriesAsDropped() throws InterruptedException {
+        status = request -> 503;
+        appender = createAppender();
+        appender.setBatchSize(3);
+        appender.setRetryBackoffMillis(60_000);
+        appender.setMaxRetryBackoffMillis(60_000);
+        appender.activateOptions();
+        log(appender, 3);
+        await(() -> appender.getRetryCount() == 1);
+        assertEquals(0, appender.getDroppedCount());
+        appender.close();
+        assertEquals(3, appender.getDroppedCount());
+        assertEquals(0, appender.getSentCount());
+    }
+
+    @Test
+    public void testDroppedBeforeActivation() {
+        appender = createAppender();
+        log(appender, 2);
+        assertEquals(2, appender.getDroppedCount());
+    }
+}
@@ -1,12 +1,17 @@
 package nz.ac.wgtn.swen301.restappender.server;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Type;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
@@ -20,6 +25,9 @@ import org.springframework.mock.web.MockHttpServletResponse;
 import com.google.gson.Gson;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestGetLogs {
@@ -152,6 +160,24 @@ public class TestGetLogs {
         assertEquals(expectedStatus, response.getStatus());
     }
 
+    @Test
+    public void testLimitIsCapped() throws IOException {
+        for (int i = 0; i < LogsServlet.MAX_LIMIT; i++) {
+            addLog(LogEvent.LogLevel.INFO, LocalDateTime.parse("12-10-2023 12:00:00", TIMESTAMP_FORMATTER).plusSeconds(i), null);
+        }
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addParameter("limit", String.valueOf(Integer.MAX_VALUE));
+        request.addParameter("level", "all");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        LogsServlet service = new LogsServlet();
+        service.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        List<LogEvent> returnedLogs = GSON.fromJson(response.getContentAsString(), LOG_EVENT_LIST_TYPE);
+        assertEquals(LogsServlet.MAX_LIMIT, returnedLogs.size());
+        assertNotNull(response.getHeader("X-Next-Cursor"));
+    }
+
     @Test
     public void testMissingParameter() throws IOException {
         MockHttpServletRequest request = new MockHttpServletRequest();
@@ -179,4 +205,164 @@ public class TestGetLogs {
         List<LogEvent> returnedLogs = GSON.fromJson(response.getContentAsString(), LOG_EVENT_LIST_TYPE);
         assertTrue(returnedLogs.isEmpty());
     }
+
+    @Test
+    public void testGzipEncoding() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addParameter("limit", String.valueOf(Integer.MAX_VALUE));
+        request.addParameter("level", "all");
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        LogsServlet service = new LogsServlet();
+        service.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("application/json", response.getContentType());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray())), response.getCharacterEncoding())) {
+            List<LogEvent> returnedLogs = GSON.fromJson(reader, LOG_EVENT_LIST_TYPE);
+            assertEquals(Persistency.DB.size(), returnedLogs.size());
+        }
+    }
+
+    @Test
+    public void testGzipRefused() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addParameter("limit", String.valueOf(Integer.MAX_VALUE));
+        request.addParameter("level", "all");
+        request.addHeader("Accept-Encoding", "gzip;q=0, deflate");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        LogsServlet service = new LogsServlet();
+        service.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        List<LogEvent> returnedLogs = GSON.fromJson(response.getContentAsString(), LOG_EVENT_LIST_TYPE);
+        assertEquals(Persistency.DB.size(), returnedLogs.size());
+    }
+
+    @Test
+    public void testAcceptsGzipQuality() {
+        assertTrue(acceptsGzip("gzip"));
+        assertTrue(acceptsGzip("deflate, gzip;q=0.5"));
+        assertTrue(acceptsGzip("*"));
+        assertTrue(acceptsGzip("GZIP ; Q=1.0"));
+        assertFalse(acceptsGzip("gzip;q=0"));
+        assertFalse(acceptsGzip("gzip;q=0.0, *;q=1"));
+        assertFalse(acceptsGzip("*;q=0"));
+        assertFalse(acceptsGzip("deflate, br"));
+        assertFalse(acceptsGzip("gzip;q=abc"));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept-Encoding", acceptEncoding);
+        return LogsServlet.acceptsGzip(request);
+    }
+
+    @Test
+    public void testTimeRange() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addParameter("limit", String.valueOf(Integer.MAX_VALUE));
+        request.addParameter("level", "all");
+        request.addParameter("from", "12-10-2023 09:18:15");
+        request.addParameter("to", "12-10-2023 17:54:30");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        LogsServlet service = new LogsServlet();
+        service.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        List<LogEvent> returnedLogs = GSON.fromJson(response.getContentAsString(), LOG_EVENT_LIST_TYPE);
+        assertEquals(3, returnedLogs.size());
+        assertEquals(LogEvent.LogLevel.DEBUG, returnedLogs.get(0).getLevel());
+        assertEquals(LogEvent.LogLevel.INFO, returnedLogs.get(1).getLevel());
+        assertEquals(LogEvent.LogLevel.ERROR, returnedLogs.get(2).getLevel());
+    }
+
+    @Test
+    public void testLoggerPrefix() throws IOException {
+        Persistency.DB.add(new LogEvent(UUID.randomUUID(), "Other logger", LocalDateTime.parse("12-10-2023 12:00:00", TIMESTAMP_FORMATTER),
+                "main", "restappender.client.Other", LogEvent.LogLevel.WARN, null));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addParameter("limit", String.valueOf(Integer.MAX_VALUE));
+        request.addParameter("level", "info");
+        request.addParameter("logger", "restappender.server.");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        LogsServlet service = new LogsServlet();
+        service.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        List<LogEvent> returnedLogs = GSON.fromJson(response.getContentAsString(), LOG_EVENT_LIST_TYPE);
+        assertEquals(5, returnedLogs.size());
+        for (LogEvent log : returnedLogs) {
+            assertEquals("restappender.server.TestGetLogs", log.getLogger());
+        }
+    }
+
+    @Test
+    public void testCursorPagination() throws IOException {
+        LogsServlet service = new LogsServlet();
+        List<LogEvent> forward = new ArrayList<>();
+        List<String> prevCursors = new ArrayList<>();
+        String cursor = null;
+        do {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addParameter("limit", "2");
+            request.addParameter("level", "all");
+            if (cursor != null) {
+                request.addParameter("cursor", cursor);
+            }
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            service.doGet(request, response);
+
+            assertEquals(200, response.getStatus());
+            forward.addAll(GSON.fromJson(response.getContentAsString(), LOG_EVENT_LIST_TYPE));
+            prevCursors.add(response.getHeader("X-Prev-Cursor"));
+            cursor = response.getHeader("X-Next-Cursor");
+        } while (cursor != null);
+
+        List<LogEvent> expected = new ArrayList<>(Persistency.DB);
+        expected.sort((log1, log2) -> log2.getTimestamp().compareTo(log1.getTimestamp()));
+        assertEquals(expected, forward);
+        assertNull(prevCursors.get(0));
+
+        // Walk back from the last page
+        List<LogEvent> backward = new ArrayList<>();
+        cursor = prevCursors.get(prevCursors.size() - 1);
+        assertNotNull(cursor);
+        while (cursor != null) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addParameter("limit", "2");
+            request.addParameter("level", "all");
+            request.addParameter("cursor", cursor);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            service.doGet(request, response);
+
+            assertEquals(200, response.getStatus());
+            List<LogEvent> page = GSON.fromJson(response.getContentAsString(), LOG_EVENT_LIST_TYPE);
+            assertTrue(page.size() <= 2);
+            backward.addAll(0, page);
+            cursor = response.getHeader("X-Prev-Cursor");
+        }
+        assertEquals(expected.subList(0, backward.size()), backward);
+        assertEquals(expected.size() - 1, backward.size());
+    }
+
+    @Test
+    public void testInvalidQueryParameters() throws IOException {
+        LogsServlet service = new LogsServlet();
+        for (String[] parameter : new String[][]{{"from", "yesterday"}, {"to", "2023-10-12T00:00:00"}, {"cursor", "notACursor"}}) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addParameter("limit", "1");
+            request.addParameter("level", "all");
+            request.addParameter(parameter[0], parameter[1]);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            service.doGet(request, response);
+
+            assertEquals(400, response.getStatus());
+        }
+    }
 }
@@ -78,6 +78,57 @@ public class TestPostLogs {
         }
     }
 
+    @Test
+    public void testAddLogEventBatch() throws IOException {
+        List<LogEvent> logEvents = validLogEventsProvider().collect(Collectors.toList());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(GSON.toJson(logEvents).getBytes());
+        request.setContentType("application/json");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        LogsServlet service = new LogsServlet();
+        service.doPost(request, response);
+
+        assertEquals(201, response.getStatus());
+        assertEquals(logEvents, Persistency.DB);
+    }
+
+    @Test
+    public void testAddAfterRemovingConflict() throws IOException {
+        LogEvent logEvent = validLogEventsProvider().findFirst().get();
+        Persistency.DB.add(logEvent);
+        assertEquals(409, post(logEvent).getStatus());
+        Persistency.DB.remove(0);
+        assertEquals(201, post(logEvent).getStatus());
+        Persistency.DB.clear();
+        assertEquals(201, post(logEvent).getStatus());
+        assertEquals(1, Persistency.DB.size());
+    }
+
+    private static MockHttpServletResponse post(LogEvent logEvent) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(GSON.toJson(logEvent).getBytes());
+        request.setContentType("application/json");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new LogsServlet().doPost(request, response);
+        return response;
+    }
+
+    @Test
+    public void testAddLogEventBatchConflict() throws IOException {
+        List<LogEvent> logEvents = validLogEventsProvider().collect(Collectors.toList());
+        Persistency.DB.add(logEvents.get(3));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(GSON.toJson(logEvents).getBytes());
+        request.setContentType("application/json");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        LogsServlet service = new LogsServlet();
+        service.doPost(request, response);
+
+        assertEquals(409, response.getStatus());
+        assertEquals(1, Persistency.DB.size());
+    }
+
     @ParameterizedTest
     @MethodSource("validLogEventsProvider")
     public void testAddLogEventConflict(LogEvent logEvent) throws IOException {
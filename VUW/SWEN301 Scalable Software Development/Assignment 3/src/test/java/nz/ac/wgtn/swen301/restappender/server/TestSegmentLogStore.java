@@ -0,0 +1,237 @@
+package nz.ac.wgtn.swen301.restappender.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSegmentLogStore {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 12, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    private static List<LogEvent> createLogs(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new LogEvent(
+                        UUID.randomUUID(),
+                        "Test log " + i + " é中",
+                        START.plusSeconds(i),
+                        "main",
+                        "restappender.server.TestSegmentLogStore",
+                        LogEvent.LogLevel.values()[i % LogEvent.LogLevel.values().length],
+                        i % 3 == 0 ? "testErrorDetails" : null))
+                .collect(Collectors.toList());
+    }
+
+    private static List<LogEvent> readAll(LogStore store) {
+        List<LogEvent> logs = new ArrayList<>();
+        store.forEach(logs::add);
+        return logs;
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        List<LogEvent> logs = createLogs(200);
+        try (SegmentLogStore store = new SegmentLogStore(directory)) {
+            store.append(logs);
+            assertEquals(logs.size(), store.size());
+            assertEquals(logs, readAll(store));
+            assertTrue(store.containsId(logs.get(123).getId()));
+            assertFalse(store.containsId(UUID.randomUUID()));
+        }
+    }
+
+    @Test
+    public void testRecoveryAfterRestart() throws IOException {
+        List<LogEvent> logs = createLogs(500);
+        try (SegmentLogStore store = new SegmentLogStore(directory, 4096, 0, 0, 10)) {
+            store.append(logs.subList(0, 250));
+            store.append(logs.subList(250, 500));
+            assertTrue(store.segmentCount() > 1);
+        }
+        try (SegmentLogStore store = new SegmentLogStore(directory, 4096, 0, 0, 10)) {
+            assertEquals(logs, readAll(store));
+            assertTrue(store.containsId(logs.get(7).getId()));
+            List<LogEvent> more = createLogs(10);
+            store.append(more);
+            assertEquals(logs.size() + more.size(), store.size());
+        }
+    }
+
+    @Test
+    public void testContainsIdAcrossSegments() throws IOException {
+        List<LogEvent> logs = createLogs(500);
+        try (SegmentLogStore store = new SegmentLogStore(directory, 4096, 0, 0, 10)) {
+            store.append(logs);
+            assertTrue(store.segmentCount() > 1);
+            for (LogEvent log : logs) {
+                assertTrue(store.containsId(log.getId()));
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertFalse(store.containsId(UUID.randomUUID()));
+            }
+        }
+    }
+
+    @Test
+    public void testReadsWhileActiveSegmentGrows() throws IOException {
+        List<LogEvent> logs = createLogs(30000);
+        try (SegmentLogStore store = new SegmentLogStore(directory, 16L * 1024 * 1024, 0, 0, 10)) {
+            for (int from = 0; from < logs.size(); from += 3000) {
+                store.append(logs.subList(from, from + 3000));
+                assertEquals(logs.subList(0, from + 3000), readAll(store));
+            }
+            assertEquals(1, store.segmentCount());
+            assertTrue(Files.size(segmentFiles(directory).get(0)) >= store.sizeInBytes());
+        }
+        // Closing trims the mapped but unwritten tail
+        long size = Files.size(segmentFiles(directory).get(0));
+        try (SegmentLogStore store = new SegmentLogStore(directory, 16L * 1024 * 1024, 0, 0, 10)) {
+            assertEquals(size, store.sizeInBytes());
+            assertEquals(logs, readAll(store));
+        }
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        List<LogEvent> logs = createLogs(20);
+        try (SegmentLogStore store = new SegmentLogStore(directory)) {
+            store.append(logs);
+        }
+        Path segment = segmentFiles(directory).get(0);
+        long validSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[]{0, 0, 0, 100, 1, 2, 3}));
+        }
+        try (SegmentLogStore store = new SegmentLogStore(directory)) {
+            assertEquals(validSize, Files.size(segment));
+            assertEquals(logs, readAll(store));
+        }
+    }
+
+    @Test
+    public void testRetentionBySize() throws IOException {
+        try (SegmentLogStore store = new SegmentLogStore(directory, 4096, 16384, 0, 10)) {
+            for (int i = 0; i < 20; i++) {
+                store.append(createLogs(50));
+            }
+            assertTrue(store.sizeInBytes() <= 16384 + 4096);
+            assertTrue(store.size() < 1000);
+            assertEquals(store.segmentCount(), segmentFiles(directory).size());
+        }
+    }
+
+    @Test
+    public void testTimeRangeScan() throws IOException {
+        List<LogEvent> logs = createLogs(1000);
+        try (SegmentLogStore store = new SegmentLogStore(directory, 8192, 0, 0, 10)) {
+            store.append(logs);
+            List<LogEvent> inRange = new ArrayList<>();
+            store.scan(START.plusSeconds(100), START.plusSeconds(250), inRange::add);
+            assertEquals(logs.subList(100, 250), inRange);
+        }
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        try (SegmentLogStore store = new SegmentLogStore(directory, 4096, 0, 0, 10)) {
+            store.append(createLogs(300));
+            store.clear();
+            assertEquals(0, store.size());
+            assertTrue(readAll(store).isEmpty());
+            assertEquals(1, segmentFiles(directory).size());
+        }
+    }
+
+    @Test
+    public void testQueryPagination() throws IOException {
+        List<LogEvent> logs = createLogs(1000);
+        List<LogEvent> shuffled = new ArrayList<>(logs);
+        Collections.shuffle(shuffled, new Random(42));
+        try (SegmentLogStore store = new SegmentLogStore(directory, 8192, 0, 0, 10)) {
+            store.append(shuffled);
+            assertTrue(store.segmentCount() > 1);
+
+            List<LogEvent> page = store.query(new LogQuery(LogEvent.LogLevel.ALL, null, null, null, null, 10));
+            assertEquals(logs.subList(990, 1000), reversed(page));
+
+            LogCursor next = new LogCursor(LogKey.of(page.get(page.size() - 1)), false);
+            page = store.query(new LogQuery(LogEvent.LogLevel.ALL, null, null, null, next, 10));
+            assertEquals(logs.subList(980, 990), reversed(page));
+
+            LogCursor previous = new LogCursor(LogKey.of(page.get(0)), true);
+            page = store.query(new LogQuery(LogEvent.LogLevel.ALL, null, null, null, previous, 10));
+            assertEquals(logs.subList(990, 1000), page);
+
+            page = store.query(new LogQuery(LogEvent.LogLevel.ERROR, "restappender.server.", START.plusSeconds(100), START.plusSeconds(200), null, 1000));
+            List<LogEvent> expected = logs.subList(100, 200).stream()
+                    .filter(log -> log.isAtLeastLevel(LogEvent.LogLevel.ERROR))
+                    .collect(Collectors.toList());
+            assertEquals(expected, reversed(page));
+            assertTrue(store.query(new LogQuery(LogEvent.LogLevel.ALL, "other", null, null, null, 10)).isEmpty());
+        }
+    }
+
+    @Test
+    public void testQueryByLevelAndLoggerIndexes() throws IOException {
+        String[] loggers = {"app.web", "app.db", "audit"};
+        List<LogEvent> logs = createLogs(1000).stream()
+                .map(log -> new LogEvent(log.getId(), log.getMessage(), log.getTimestamp(), log.getThread(),
+                        loggers[(int) (log.getTimestamp().getSecond() % loggers.length)], log.getLevel(), log.getErrorDetails()))
+                .collect(Collectors.toList());
+        List<LogEvent> shuffled = new ArrayList<>(logs);
+        Collections.shuffle(shuffled, new Random(7));
+        try (SegmentLogStore store = new SegmentLogStore(directory, 8192, 0, 0, 10)) {
+            store.append(shuffled.subList(0, 900));
+        }
+        // Sealed segments are recovered, the last one stays active and takes the remaining records
+        try (SegmentLogStore store = new SegmentLogStore(directory, 8192, 0, 0, 10)) {
+            store.append(shuffled.subList(900, 1000));
+            assertTrue(store.segmentCount() > 1);
+
+            List<LogEvent> fatal = logs.stream()
+                    .filter(log -> log.isAtLeastLevel(LogEvent.LogLevel.FATAL))
+                    .collect(Collectors.toList());
+            List<LogEvent> page = store.query(new LogQuery(LogEvent.LogLevel.FATAL, null, null, null, null, 10));
+            assertEquals(fatal.subList(fatal.size() - 10, fatal.size()), reversed(page));
+
+            List<LogEvent> app = logs.stream()
+                    .filter(log -> log.getLogger().startsWith("app.") && log.isAtLeastLevel(LogEvent.LogLevel.WARN))
+                    .collect(Collectors.toList());
+            page = store.query(new LogQuery(LogEvent.LogLevel.WARN, "app.", null, null, null, 2000));
+            assertEquals(app, reversed(page));
+
+            LogCursor next = new LogCursor(LogKey.of(page.get(49)), false);
+            page = store.query(new LogQuery(LogEvent.LogLevel.WARN, "app.", null, null, next, 20));
+            assertEquals(app.subList(app.size() - 70, app.size() - 50), reversed(page));
+        }
+    }
+
+    private static List<LogEvent> reversed(List<LogEvent> logs) {
+        List<LogEvent> copy = new ArrayList<>(logs);
+        Collections.reverse(copy);
+        return copy;
+    }
+}
@@ -75,4 +75,27 @@ public class TestStatsXLS {
             assertEquals(1, (int) dataRow.getCell(8).getNumericCellValue());
         }
     }
+
+    @Test
+    public void testManyLoggers() throws IOException {
+        int loggerCount = 1000;
+        for (int i = 0; i < loggerCount; i++) {
+            Persistency.DB.add(new LogEvent(UUID.randomUUID(), "Test log", LocalDateTime.parse("12-10-2023 14:10:00", TIMESTAMP_FORMATTER),
+                    "main", "restappender.server.Logger" + i, LogEvent.LogLevel.INFO, null));
+        }
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        StatsExcelServlet service = new StatsExcelServlet();
+        service.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(loggerCount + 1, sheet.getLastRowNum());
+            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
+                assertNotNull(sheet.getRow(i).getCell(0).getStringCellValue());
+            }
+        }
+    }
 }